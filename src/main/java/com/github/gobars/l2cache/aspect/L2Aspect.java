@@ -8,9 +8,11 @@ import com.github.gobars.l2cache.aspect.support.SimpleKeyGenerator;
 import com.github.gobars.l2cache.core.cache.Cache;
 import com.github.gobars.l2cache.core.manager.CacheManager;
 import com.github.gobars.l2cache.core.redis.serializer.SerializationException;
+import com.github.gobars.l2cache.core.setting.BloomSetting;
 import com.github.gobars.l2cache.core.setting.C1Setting;
 import com.github.gobars.l2cache.core.setting.C2Setting;
 import com.github.gobars.l2cache.core.setting.L2Setting;
+import com.github.gobars.l2cache.core.support.SizeEstimator;
 import com.github.gobars.l2cache.core.util.ToStringUtils;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
@@ -20,6 +22,7 @@ import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.expression.AnnotatedElementKey;
 import org.springframework.core.BridgeMethodResolver;
@@ -160,10 +163,11 @@ public class L2Aspect {
     // 从注解中获取缓存配置
     L1 l1 = cacheable.l1();
     L2 l2 = cacheable.l2();
-    val setting1 = new C1Setting(l1.initCap(), l1.maxSize(), l1.expireSecs());
-    val setting2 = new C2Setting(l2.expireSecs(), l2.preloadSecs(), l2.forceRefresh());
+    val setting1 = c1Setting(l1);
+    val setting2 = c2Setting(l2);
 
     L2Setting l2Setting = new L2Setting(setting1, setting2, cacheable.desc());
+    l2Setting.setBloomSetting(bloomSetting(cacheable.bloom()));
 
     // 通过cacheName和缓存配置获取Cache
     Cache cache = cacheManager.getCache(cacheName, l2Setting);
@@ -264,8 +268,8 @@ public class L2Aspect {
     // 从解决中获取缓存配置
     L1 l1 = cachePut.firstCache();
     L2 l2 = cachePut.secondaryCache();
-    val c1Setting = new C1Setting(l1.initCap(), l1.maxSize(), l1.expireSecs());
-    val c2Setting = new C2Setting(l2.expireSecs(), l2.preloadSecs(), l2.forceRefresh());
+    val c1Setting = c1Setting(l1);
+    val c2Setting = c2Setting(l2);
 
     L2Setting l2Setting = new L2Setting(c1Setting, c2Setting, cachePut.desc());
 
@@ -281,6 +285,53 @@ public class L2Aspect {
     return result;
   }
 
+  /**
+   * 根据注解创建L1配置
+   *
+   * @param l1 {@link L1}
+   * @return {@link C1Setting}
+   */
+  private C1Setting c1Setting(L1 l1) {
+    val setting = new C1Setting(l1.initCap(), l1.maxSize(), l1.expireSecs());
+    setting.setRefreshSecs(l1.refreshSecs());
+    setting.setNullExpireSecs(l1.nullExpireSecs());
+    setting.setNullMaxSize(l1.nullMaxSize());
+    setting.setOffHeap(l1.offHeap());
+    setting.setMaxBytes(l1.maxBytes());
+    if (l1.sizeEstimator() != SizeEstimator.class) {
+      setting.setSizeEstimator(BeanUtils.instantiateClass(l1.sizeEstimator()));
+    }
+    return setting;
+  }
+
+  /**
+   * 根据注解创建L2配置
+   *
+   * @param l2 {@link L2}
+   * @return {@link C2Setting}
+   */
+  private C2Setting c2Setting(L2 l2) {
+    val setting = new C2Setting(l2.expireSecs(), l2.preloadSecs(), l2.forceRefresh());
+    setting.setNullExpireSecs(l2.nullExpireSecs());
+    setting.setRefreshPolicy(l2.refreshPolicy());
+    setting.setRefreshBeta(l2.refreshBeta());
+    setting.setGenerationClear(l2.generationClear());
+    return setting;
+  }
+
+  /**
+   * 根据注解创建布隆过滤器配置
+   *
+   * @param bloom {@link Bloom}
+   * @return {@link BloomSetting}，没有开启时返回null
+   */
+  private BloomSetting bloomSetting(Bloom bloom) {
+    if (!bloom.enabled()) {
+      return null;
+    }
+    return new BloomSetting(bloom.expectedInsertions(), bloom.fpp(), bloom.refreshSecs());
+  }
+
   private Invoker createInvoker(ProceedingJoinPoint joinPoint) {
     return () -> {
       try {
@@ -0,0 +1,44 @@
+package com.github.gobars.l2cache.aspect.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 布隆过滤器配置项，防止缓存穿透.
+ *
+ * <p>开启后一定不存在的key直接返回null，不查询L2，也不执行被缓存方法
+ *
+ * @author bingoohuang
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface Bloom {
+  /**
+   * 是否开启布隆过滤器，默认否
+   *
+   * @return boolean
+   */
+  boolean enabled() default false;
+
+  /**
+   * 预计插入的key数量
+   *
+   * @return long
+   */
+  long expectedInsertions() default 1000000;
+
+  /**
+   * 期望的误判率
+   *
+   * @return double
+   */
+  double fpp() default 0.01;
+
+  /**
+   * 本地位数组从redis增量刷新的间隔时间(秒)，其他节点新增的key在刷新前可能被误拒
+   *
+   * @return int
+   */
+  int refreshSecs() default 30;
+}
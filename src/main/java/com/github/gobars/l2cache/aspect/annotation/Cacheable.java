@@ -84,4 +84,14 @@ public @interface Cacheable {
    * @return SecondaryCache
    */
   L2 l2() default @L2();
+
+  /**
+   * 布隆过滤器配置，默认不开启
+   *
+   * <p>开启后需要通过put或者 {@link
+   * com.github.gobars.l2cache.core.bloom.BloomFilter#rebuild(Iterable)} 放入已经存在的key
+   *
+   * @return Bloom
+   */
+  Bloom bloom() default @Bloom();
 }
@@ -1,5 +1,7 @@
 package com.github.gobars.l2cache.aspect.annotation;
 
+import com.github.gobars.l2cache.core.support.SizeEstimator;
+
 import java.lang.annotation.*;
 
 /**
@@ -32,4 +34,52 @@ public @interface L1 {
    * @return int
    */
   int expireSecs() default 5 * 60;
+
+  /**
+   * 写入多久之后(秒)在访问时从L2异步刷新，0表示不刷新，需要小于 {@link #expireSecs}
+   *
+   * <p>热点key在过期前就被刷新，不会因为L1过期而同步查询L2
+   *
+   * @return int
+   */
+  int refreshSecs() default 0;
+
+  /**
+   * NULL值(被缓存方法返回null)的有效时间(秒)，0表示和 {@link #expireSecs} 相同
+   *
+   * @return int
+   */
+  int nullExpireSecs() default 30;
+
+  /**
+   * NULL值单独存放，最多缓存的NULL值个数，避免大量不存在的key挤掉正常数据
+   *
+   * @return int
+   */
+  int nullMaxSize() default 1000;
+
+  /**
+   * 是否把缓存值序列化后存放在堆外内存，适合读多写少的大数据量缓存，默认否
+   *
+   * <p>开启后 {@link #maxSize} 和 {@link #refreshSecs} 不生效，容量由 {@link #maxBytes} 决定
+   *
+   * @return boolean
+   */
+  boolean offHeap() default false;
+
+  /**
+   * L1容量(字节)，大于0时按缓存值的大小淘汰，{@link #maxSize} 不生效
+   *
+   * <p>堆外模式下是堆外内存的容量，0表示64MB
+   *
+   * @return long
+   */
+  long maxBytes() default 0;
+
+  /**
+   * 按 {@link #maxBytes} 限制容量时估算缓存值大小的实现类，默认使用序列化后的字节数
+   *
+   * @return Class
+   */
+  Class<? extends SizeEstimator> sizeEstimator() default SizeEstimator.class;
 }
@@ -1,5 +1,7 @@
 package com.github.gobars.l2cache.aspect.annotation;
 
+import com.github.gobars.l2cache.core.setting.RefreshPolicy;
+
 import java.lang.annotation.*;
 
 /**
@@ -19,6 +21,13 @@ public @interface L2 {
    */
   long expireSecs() default 5 * 60 * 60;
 
+  /**
+   * NULL值(被缓存方法返回null)的有效时间(秒)，0表示和 {@link #expireSecs} 相同
+   *
+   * @return long
+   */
+  long nullExpireSecs() default 60;
+
   /**
    * 缓存主动在失效前强制刷新缓存的时间
    *
@@ -34,4 +43,27 @@ public @interface L2 {
    * @return boolean
    */
   boolean forceRefresh() default false;
+
+  /**
+   * 主动刷新策略，默认剩余时间进入 {@link #preloadSecs} 窗口后刷新
+   *
+   * @return RefreshPolicy
+   */
+  RefreshPolicy refreshPolicy() default RefreshPolicy.PRELOAD_WINDOW;
+
+  /**
+   * {@link RefreshPolicy#XFETCH} 的系数，大于1倾向更早刷新，小于1倾向更晚刷新
+   *
+   * @return double
+   */
+  double refreshBeta() default 1.0;
+
+  /**
+   * 清空缓存时只把缓存的代数加1，不扫描删除redis里的key，老的key等过期后自动删除，默认是false
+   *
+   * <p>开启后redis key的格式是 缓存名称 + ":g" + 代数 + ":" + 缓存key
+   *
+   * @return boolean
+   */
+  boolean generationClear() default false;
 }
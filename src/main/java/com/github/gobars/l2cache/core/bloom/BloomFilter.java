@@ -0,0 +1,409 @@
+package com.github.gobars.l2cache.core.bloom;
+
+import com.github.gobars.l2cache.core.redis.client.RedisClient;
+import com.github.gobars.l2cache.core.setting.BloomSetting;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按缓存名称划分的布隆过滤器，用来防止缓存穿透
+ *
+ * <p>位数组以bitmap的形式存放在redis中，各节点共享；本地保存一份镜像用于判断，判断时不访问redis。
+ * 本地镜像按固定间隔分块读取redis中的bitmap并按位或合并，其他节点新增的key最迟在一个刷新间隔后可见
+ *
+ * <p>只有完整重建过( {@link #rebuild} 完成后在redis里写入就绪标记)才拒绝查询，否则不知道位数组里是否包含了所有的key。
+ * 本地镜像判断不存在时再到redis确认一次，其他节点刚放入的key不会在下次刷新前被误拒
+ *
+ * <p>本地镜像的位顺序和redis bitmap一致：offset为0的位是第一个字节的最高位
+ *
+ * @author bingoohuang
+ */
+@Slf4j
+public class BloomFilter {
+  /** 布隆过滤器bitmap的key前缀 */
+  public static final String PREFIX = "l2cache:bloom:";
+
+  /** 每次GETRANGE读取的字节数 */
+  private static final int CHUNK_BYTES = 64 * 1024;
+
+  /** 重建时每批写入redis的key个数 */
+  private static final int REBUILD_BATCH = 1000;
+
+  /** 到redis确认key对应的位是否都已置位 */
+  private static final String CONTAINS_SCRIPT =
+      "for i = 1, #ARGV do "
+          + "if redis.call('GETBIT', KEYS[1], ARGV[i]) == 0 then return 0 end "
+          + "end "
+          + "return 1";
+
+  /** redis bitmap最大支持2^32位 */
+  private static final long MAX_BITS = 1L << 32;
+
+  /** 定时刷新线程池，所有布隆过滤器共用，守护线程，不关闭，各过滤器关闭时取消自己的刷新任务 */
+  private static final ScheduledThreadPoolExecutor executor =
+      new ScheduledThreadPoolExecutor(
+          1,
+          r -> {
+            Thread thread = new Thread(r, "l2cache-bloom-refresh");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  static {
+    executor.setRemoveOnCancelPolicy(true);
+  }
+
+  private final RedisClient redisClient;
+
+  /** bitmap在redis中的key，用hash tag保证和重建时的临时key在同一个slot */
+  @Getter private final String redisKey;
+
+  /** 位数组的长度 */
+  @Getter private final long numBits;
+
+  /** 哈希函数个数 */
+  @Getter private final int numHashes;
+
+  /** 本地镜像 */
+  private volatile AtomicLongArray bits;
+
+  /** 重建过程中新写入的key同时放到新的位数组，重建完成后替换本地镜像 */
+  private volatile AtomicLongArray rebuilding;
+
+  /** redis里有就绪标记(重建过)并且已经加载到本地镜像，之前不拒绝任何key，防止误拒 */
+  private volatile boolean loaded;
+
+  /** 被拒绝的查询次数 */
+  private final LongAdder rejectCount = new LongAdder();
+
+  /** 定时刷新任务 */
+  private final ScheduledFuture<?> refreshTask;
+
+  /**
+   * @param redisClient redis客户端
+   * @param cacheName 缓存名称
+   * @param setting 布隆过滤器配置
+   */
+  public BloomFilter(RedisClient redisClient, String cacheName, BloomSetting setting) {
+    this.redisClient = redisClient;
+    this.redisKey = PREFIX + "{" + cacheName + "}";
+    this.numBits = optimalNumBits(setting.getExpectedInsertions(), setting.getFpp());
+    this.numHashes = optimalNumHashes(setting.getExpectedInsertions(), numBits);
+    this.bits = newBits();
+
+    this.refreshTask =
+        executor.scheduleWithFixedDelay(
+            this::refreshQuietly, 0, setting.getRefreshSecs(), TimeUnit.SECONDS);
+  }
+
+  /**
+   * 判断key是否可能存在
+   *
+   * @param key 缓存key
+   * @return false表示一定不存在，true表示可能存在
+   */
+  public boolean mightContain(String key) {
+    if (!loaded) {
+      return true;
+    }
+
+    long[] offsets = offsets(key);
+    if (containsLocal(bits, offsets) || containsRemote(offsets)) {
+      return true;
+    }
+
+    rejectCount.increment();
+    return false;
+  }
+
+  /**
+   * 放入一个已经存在的key，同时写入本地镜像和redis
+   *
+   * <p>本地镜像中的位都已经置位时不再写redis；写redis只发送命令不等待结果，可以在redis的I/O线程中调用
+   *
+   * @param key 缓存key
+   */
+  public void put(String key) {
+    long[] offsets = offsets(key);
+    AtomicLongArray next = this.rebuilding;
+    if (next == null && containsLocal(bits, offsets)) {
+      return;
+    }
+
+    setLocal(bits, offsets);
+    if (next != null) {
+      setLocal(next, offsets);
+      setBitsAsync(rebuildKey(), offsets);
+    }
+    setBitsAsync(redisKey, offsets);
+  }
+
+  /**
+   * 从批量key数据源重建布隆过滤器，清除已经删除的key留下的位
+   *
+   * <p>先写入临时key，完成后RENAME替换，重建期间的判断仍然使用旧的位数组。
+   * 其他节点的本地镜像只做按位或合并，已经删除的key留下的位在节点重启后才会清除
+   *
+   * @param keys 所有已经存在的key
+   */
+  public synchronized void rebuild(Iterable<String> keys) {
+    long start = System.currentTimeMillis();
+    String tmpKey = rebuildKey();
+    redisClient.delete(tmpKey);
+
+    AtomicLongArray next = newBits();
+    this.rebuilding = next;
+    try {
+      List<long[]> batch = new ArrayList<>(REBUILD_BATCH);
+      long count = 0;
+      for (String key : keys) {
+        long[] offsets = offsets(key);
+        setLocal(next, offsets);
+        batch.add(offsets);
+        if (batch.size() >= REBUILD_BATCH) {
+          writeBatch(tmpKey, batch);
+        }
+        count++;
+      }
+      writeBatch(tmpKey, batch);
+
+      redisClient.rename(tmpKey, redisKey);
+      // 其他节点刷新时看到就绪标记才开始拒绝
+      redisClient.set(readyKey(), start);
+      this.bits = next;
+      this.loaded = true;
+      log.info(
+          "布隆过滤器 {} 重建完成, key个数={}, 耗时={}ms",
+          redisKey,
+          count,
+          System.currentTimeMillis() - start);
+    } finally {
+      this.rebuilding = null;
+    }
+  }
+
+  /**
+   * 分块读取redis中的bitmap，并按位或合并到本地镜像
+   *
+   * <p>没有完整重建过，或者bitmap不存在(redis被清空)时不能判断key不存在，回到未加载状态，不拒绝任何key
+   */
+  public void refresh() {
+    AtomicLongArray local = this.bits;
+    long totalBytes = numBits >>> 3;
+    boolean exists = false;
+    for (long start = 0; start < totalBytes; start += CHUNK_BYTES) {
+      byte[] chunk = redisClient.getRange(redisKey, start, start + CHUNK_BYTES - 1);
+      exists |= chunk.length > 0;
+      merge(local, start, chunk);
+      if (chunk.length < CHUNK_BYTES) {
+        // bitmap只写到了这里，后面全是0
+        break;
+      }
+    }
+    this.loaded = exists && Boolean.TRUE.equals(redisClient.hasKey(readyKey()));
+  }
+
+  /**
+   * 根据本地镜像中已经置位的位数估算当前的误判率
+   *
+   * @return 误判率，0~1
+   */
+  public double expectedFpp() {
+    AtomicLongArray local = this.bits;
+    long bitCount = 0;
+    for (int i = 0; i < local.length(); i++) {
+      bitCount += Long.bitCount(local.get(i));
+    }
+    return Math.pow((double) bitCount / numBits, numHashes);
+  }
+
+  public long getAndResetRejectCount() {
+    return rejectCount.sumThenReset();
+  }
+
+  /** 取消定时刷新任务，缓存删除或者缓存管理器销毁时调用 */
+  public void close() {
+    refreshTask.cancel(false);
+  }
+
+  private void refreshQuietly() {
+    try {
+      refresh();
+    } catch (Exception e) {
+      log.warn("布隆过滤器 {} 刷新本地镜像异常: {}", redisKey, e.getMessage(), e);
+    }
+  }
+
+  private void writeBatch(String key, List<long[]> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    long[] offsets = new long[batch.size() * numHashes];
+    int i = 0;
+    for (long[] keyOffsets : batch) {
+      System.arraycopy(keyOffsets, 0, offsets, i, numHashes);
+      i += numHashes;
+    }
+    redisClient.setBits(key, offsets);
+    batch.clear();
+  }
+
+  private String rebuildKey() {
+    return redisKey + ":rebuild";
+  }
+
+  /** 重建完成的标记，和bitmap在同一个slot */
+  private String readyKey() {
+    return redisKey + ":ready";
+  }
+
+  private void setBitsAsync(String key, long[] offsets) {
+    try {
+      redisClient
+          .setBitsAsync(key, offsets)
+          .whenComplete(
+              (v, e) -> {
+                if (e != null) {
+                  log.warn("布隆过滤器 {} 写入redis异常: {}", key, e.getMessage());
+                }
+              });
+    } catch (Exception e) {
+      log.warn("布隆过滤器 {} 写入redis异常: {}", key, e.getMessage());
+    }
+  }
+
+  private static boolean containsLocal(AtomicLongArray local, long[] offsets) {
+    for (long offset : offsets) {
+      if ((local.get((int) (offset >>> 6)) & mask(offset)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** 本地镜像判断不存在时到redis确认，redis里已经置位时合并到本地镜像，redis异常时按存在处理 */
+  private boolean containsRemote(long[] offsets) {
+    List<String> args = new ArrayList<>(offsets.length);
+    for (long offset : offsets) {
+      args.add(Long.toString(offset));
+    }
+    try {
+      Object result = redisClient.eval(CONTAINS_SCRIPT, Collections.singletonList(redisKey), args);
+      if (result instanceof Number && ((Number) result).longValue() == 0) {
+        return false;
+      }
+      setLocal(bits, offsets);
+      return true;
+    } catch (Exception e) {
+      log.warn("布隆过滤器 {} 确认key是否存在异常: {}", redisKey, e.getMessage());
+      return true;
+    }
+  }
+
+  private AtomicLongArray newBits() {
+    return new AtomicLongArray((int) ((numBits + 63) >>> 6));
+  }
+
+  /**
+   * 计算key对应的位，使用两个64位哈希值组合出numHashes个哈希函数
+   *
+   * @param key 缓存key
+   * @return 位offset
+   */
+  long[] offsets(String key) {
+    long h1 = hash64(key.getBytes(StandardCharsets.UTF_8));
+    long h2 = mix64(h1 ^ 0x9E3779B97F4A7C15L);
+
+    long[] offsets = new long[numHashes];
+    long combined = h1;
+    for (int i = 0; i < numHashes; i++) {
+      offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+      combined += h2;
+    }
+    return offsets;
+  }
+
+  private static void setLocal(AtomicLongArray local, long[] offsets) {
+    for (long offset : offsets) {
+      int index = (int) (offset >>> 6);
+      long mask = mask(offset);
+      long old;
+      do {
+        old = local.get(index);
+      } while ((old & mask) == 0 && !local.compareAndSet(index, old, old | mask));
+    }
+  }
+
+  /**
+   * 将redis中从start字节开始的一段bitmap按位或合并到本地镜像，每8个字节按大端序组成一个long
+   *
+   * @param local 本地镜像
+   * @param start 开始字节，是8的整数倍
+   * @param chunk 读取到的字节
+   */
+  private static void merge(AtomicLongArray local, long start, byte[] chunk) {
+    for (int i = 0; i < chunk.length; i += 8) {
+      long word = 0;
+      for (int j = 0; j < 8; j++) {
+        int b = i + j < chunk.length ? chunk[i + j] & 0xFF : 0;
+        word = (word << 8) | b;
+      }
+      if (word == 0) {
+        continue;
+      }
+
+      int index = (int) ((start + i) >>> 3);
+      long old;
+      do {
+        old = local.get(index);
+      } while ((old | word) != old && !local.compareAndSet(index, old, old | word));
+    }
+  }
+
+  private static long mask(long offset) {
+    return 1L << (63 - (offset & 63));
+  }
+
+  /** FNV-1a 64位哈希，再经过一次混合让低位分布均匀 */
+  private static long hash64(byte[] data) {
+    long h = 0xCBF29CE484222325L;
+    for (byte b : data) {
+      h ^= b & 0xFF;
+      h *= 0x100000001B3L;
+    }
+    return mix64(h);
+  }
+
+  /** MurmurHash3的64位finalizer */
+  private static long mix64(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /** m = -n * ln(p) / (ln2)^2，向上取整到8的倍数，方便按字节读取 */
+  private static long optimalNumBits(long n, double p) {
+    long m = (long) Math.ceil(-Math.max(n, 1) * Math.log(p) / (Math.log(2) * Math.log(2)));
+    m = Math.min(Math.max(m, 64), MAX_BITS);
+    return (m + 7) & ~7L;
+  }
+
+  /** k = m / n * ln2 */
+  private static int optimalNumHashes(long n, long m) {
+    return Math.max(1, (int) Math.round((double) m / Math.max(n, 1) * Math.log(2)));
+  }
+}
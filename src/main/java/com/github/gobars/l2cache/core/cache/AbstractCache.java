@@ -3,11 +3,15 @@ package com.github.gobars.l2cache.core.cache;
 import com.alibaba.fastjson.JSON;
 import com.github.gobars.l2cache.core.stats.CacheStats;
 import com.github.gobars.l2cache.core.support.NullValue;
+import com.github.gobars.l2cache.core.support.ThreadPool;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.util.Assert;
 
+import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Cache 接口的抽象实现类，对公共的方法做了一写实现，如是否允许存NULL值
@@ -42,6 +46,97 @@ public abstract class AbstractCache implements Cache {
     return (T) fromStoreValue(get(key));
   }
 
+  @Override
+  public <T> CompletableFuture<T> getAsync(String key, Callable<T> valueLoader) {
+    return ThreadPool.supplyAsync(() -> get(key, valueLoader));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> Map<String, T> getAll(
+      Collection<String> keys, Function<Set<String>, Map<String, T>> batchLoader) {
+    Map<String, T> result = new HashMap<>(keys.size());
+    Set<String> misses = new LinkedHashSet<>();
+    for (String key : keys) {
+      Object value = get(key);
+      if (value == null) {
+        misses.add(key);
+      } else if (!(value instanceof NullValue)) {
+        result.put(key, (T) value);
+      }
+    }
+
+    if (!misses.isEmpty()) {
+      Map<String, Object> loaded = loadAll(misses, batchLoader);
+      putAll(loaded);
+      loaded.forEach((k, v) -> addUserValue(result, k, v));
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Object> getAllPresent(Collection<String> keys) {
+    Map<String, Object> result = new HashMap<>(keys.size());
+    for (String key : keys) {
+      Object value = get(key);
+      if (value != null) {
+        result.put(key, value);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void putAll(Map<String, ?> values) {
+    values.forEach(this::put);
+  }
+
+  @Override
+  public Object putIfAbsent(String key, Object value, long ttlMs) {
+    return putIfAbsent(key, value);
+  }
+
+  /**
+   * 调用batchLoader加载一批未命中的key
+   *
+   * @param misses 未命中的key
+   * @param batchLoader 批量加载的回调方法
+   * @return 每个key对应的缓存值，batchLoader没有返回的key对应{@link NullValue#INSTANCE}
+   */
+  protected <T> Map<String, Object> loadAll(
+      Set<String> misses, Function<Set<String>, Map<String, T>> batchLoader) {
+    long start = System.currentTimeMillis();
+    if (isStats()) {
+      getCacheStats().addCachedRequestCount(misses.size());
+    }
+
+    Map<String, T> loaded;
+    try {
+      loaded = batchLoader.apply(Collections.unmodifiableSet(misses));
+    } catch (Exception e) {
+      throw new LoaderCacheValueException(misses, e);
+    }
+
+    if (isStats()) {
+      getCacheStats().addCachedRequestTime(System.currentTimeMillis() - start);
+    }
+
+    Map<String, Object> values = new LinkedHashMap<>(misses.size());
+    for (String key : misses) {
+      values.put(key, toStoreValue(loaded == null ? null : loaded.get(key)));
+    }
+    return values;
+  }
+
+  /** 将缓存值转换成用户值放到结果中，NULL值不放 */
+  @SuppressWarnings("unchecked")
+  protected <T> void addUserValue(Map<String, T> result, String key, Object storeValue) {
+    Object value = fromStoreValue(storeValue);
+    if (value != null) {
+      result.put(key, (T) value);
+    }
+  }
+
   /**
    * Convert the given value from the internal store to a user value returned from the get method
    * (adapting {@code null}).
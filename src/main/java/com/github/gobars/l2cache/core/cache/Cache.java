@@ -3,7 +3,12 @@ package com.github.gobars.l2cache.core.cache;
 import com.github.gobars.l2cache.core.manager.CacheManager;
 import com.github.gobars.l2cache.core.stats.CacheStats;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * 缓存的顶级接口
@@ -54,6 +59,37 @@ public interface Cache {
    */
   <T> T get(String key, Callable<T> valueLoader);
 
+  /**
+   * {@link #get(String, Callable)} 的异步版本，如果对应key不存在则在线程池中调用valueLoader加载数据
+   *
+   * @param key 缓存key
+   * @param valueLoader 加载缓存的回调方法
+   * @param <T> Object
+   * @return 缓存key对应的值
+   */
+  <T> CompletableFuture<T> getAsync(String key, Callable<T> valueLoader);
+
+  /**
+   * 批量获取缓存，未命中的key一次性交给batchLoader加载，并将加载结果放到缓存
+   *
+   * <p>batchLoader返回结果中没有的key按NULL值处理
+   *
+   * @param keys 缓存key集合
+   * @param batchLoader 批量加载未命中key的回调方法
+   * @param <T> Object
+   * @return key和对应的值，值为NULL的key不在返回结果中
+   */
+  <T> Map<String, T> getAll(
+      Collection<String> keys, Function<Set<String>, Map<String, T>> batchLoader);
+
+  /**
+   * 批量获取缓存中已有的值，不加载
+   *
+   * @param keys 缓存key集合
+   * @return key和对应的缓存值(包括NULL值)，没有命中的key不在返回结果中
+   */
+  Map<String, Object> getAllPresent(Collection<String> keys);
+
   /**
    * 将对应key-value放到缓存，如果key原来有值就直接覆盖
    *
@@ -62,6 +98,13 @@ public interface Cache {
    */
   void put(String key, Object value);
 
+  /**
+   * 批量将key-value放到缓存，如果key原来有值就直接覆盖
+   *
+   * @param values 缓存key和值
+   */
+  void putAll(Map<String, ?> values);
+
   /**
    * 如果缓存key没有对应的值就将值put到缓存，如果有就直接返回原有的值
    *
@@ -89,6 +132,18 @@ public interface Cache {
    */
   Object putIfAbsent(String key, Object value);
 
+  /**
+   * 和 {@link #putIfAbsent(String, Object)} 相同，同时指定这个key最长的有效时间
+   *
+   * <p>L2的数据放到L1时使用，保证L1中的数据不会比L2中的数据存活得更久
+   *
+   * @param key 缓存key
+   * @param value 缓存key对应的值
+   * @param ttlMs 最长有效时间(毫秒)，小于等于0表示使用缓存本身的有效时间
+   * @return 同 {@link #putIfAbsent(String, Object)}
+   */
+  Object putIfAbsent(String key, Object value, long ttlMs);
+
   /**
    * 在缓存中删除对应的key
    *
@@ -1,14 +1,34 @@
 package com.github.gobars.l2cache.core.cache;
 
 import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy.VarExpiration;
+import com.github.gobars.l2cache.core.redis.client.RedisValue;
+import com.github.gobars.l2cache.core.redis.serializer.RedisSerializer;
+import com.github.gobars.l2cache.core.redis.serializer.SerializationException;
 import com.github.gobars.l2cache.core.setting.C1Setting;
+import com.github.gobars.l2cache.core.snapshot.L1Snapshot;
+import com.github.gobars.l2cache.core.support.NullValue;
+import com.github.gobars.l2cache.core.support.SizeEstimator;
+import com.github.gobars.l2cache.core.support.ThreadPool;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 /**
  * 基于Caffeine实现的L1
@@ -17,9 +37,39 @@ import java.util.concurrent.TimeUnit;
  */
 @Slf4j
 public class CaffeineCache extends AbstractCache {
-  /** 缓存对象 */
+  /** 删除版本的分段数，2的幂 */
+  private static final int EPOCH_STRIPES = 1024;
+
+  /** 异步缓存对象 */
+  private final AsyncCache<Object, Object> asyncCache;
+
+  /** 异步缓存对象的同步视图 */
   private final Cache<Object, Object> cache;
 
+  /** NULL值单独存放的区域，容量和有效时间独立配置，不会把正常数据挤出L1 */
+  private final Cache<Object, Object> nullCache;
+
+  /** 按key设置有效时间 */
+  private final VarExpiration<Object, Object> varExpiration;
+
+  /** L1有效时间(毫秒) */
+  private final long expireMs;
+
+  /** 恢复快照期间被删除的key，不为NULL表示正在恢复 */
+  private volatile Set<Object> evictedWhileRestoring;
+
+  /** 恢复快照期间执行过clear */
+  private volatile boolean clearedWhileRestoring;
+
+  /** 删除版本，按key分段，删除前先加一。刷新前记下版本，从L2读取后版本变了说明期间有删除，丢弃读到的值 */
+  private final AtomicLongArray evictEpochs = new AtomicLongArray(EPOCH_STRIPES);
+
+  /** 清空版本，清空前先加一 */
+  private final AtomicLong clearEpoch = new AtomicLong();
+
+  /** 从L2刷新到的值的剩余生存时间(纳秒)，刷新结果放入L1时按它设置有效时间 */
+  private final ConcurrentMap<Object, Long> refreshTtls = new ConcurrentHashMap<>();
+
   /**
    * 使用name和{@link C1Setting}创建一个 {@link CaffeineCache} 实例
    *
@@ -28,8 +78,30 @@ public class CaffeineCache extends AbstractCache {
    * @param stats 是否开启统计模式
    */
   public CaffeineCache(String name, C1Setting c1Setting, boolean stats) {
+    this(name, c1Setting, stats, null);
+  }
+
+  /**
+   * 使用name和{@link C1Setting}创建一个 {@link CaffeineCache} 实例，配置了refreshSecs时过期前从L2异步刷新
+   *
+   * @param name 缓存名称
+   * @param c1Setting L1配置 {@link C1Setting}
+   * @param stats 是否开启统计模式
+   * @param l2Loader 从L2读取缓存值及剩余生存时间，可以为NULL
+   */
+  public CaffeineCache(
+      String name, C1Setting c1Setting, boolean stats, Function<String, RedisValue> l2Loader) {
     super(stats, name);
-    this.cache = getCache(c1Setting);
+    AsyncCacheLoader<Object, Object> loader = l2Loader == null ? null : new L2Loader(l2Loader);
+    this.asyncCache = getCache(name, c1Setting, loader, refreshTtls);
+    this.cache = asyncCache.synchronous();
+    this.nullCache = getNullCache(c1Setting);
+    this.varExpiration =
+        cache
+            .policy()
+            .expireVariably()
+            .orElseThrow(() -> new IllegalStateException("caffeine缓存没有开启按key设置有效时间"));
+    this.expireMs = TimeUnit.SECONDS.toMillis(c1Setting.getExpireSecs());
   }
 
   @Override
@@ -45,10 +117,9 @@ public class CaffeineCache extends AbstractCache {
       getCacheStats().addRequestCount(1);
     }
 
-    if (this.cache instanceof LoadingCache) {
-      return ((LoadingCache<Object, Object>) this.cache).get(key);
-    }
-    return cache.getIfPresent(key);
+    // 开启刷新时native cache是LoadingCache，这里也只查不加载，需要刷新的key由getIfPresent触发异步刷新
+    Object result = cache.getIfPresent(key);
+    return result != null ? result : nullCache.getIfPresent(key);
   }
 
   @Override
@@ -60,33 +131,299 @@ public class CaffeineCache extends AbstractCache {
       getCacheStats().addRequestCount(1);
     }
 
-    Object result = this.cache.get(key, k -> loaderValue(key, valueLoader));
+    if (nullCache.getIfPresent(key) != null) {
+      return null;
+    }
+
+    // 加载到NULL值时放到NULL值区域，返回null让Caffeine不在正常区域保存
+    Object result = this.cache.get(key, k -> nonNullOrPark(key, loaderValue(key, valueLoader)));
     return (T) fromStoreValue(result);
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> CompletableFuture<T> getAsync(String key, Callable<T> valueLoader) {
+    log.debug("caffeine缓存 key={} 异步获取缓存， 如果没有命中就走库加载缓存", key);
+
+    if (isStats()) {
+      getCacheStats().addRequestCount(1);
+    }
+
+    if (nullCache.getIfPresent(key) != null) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    // future以null完成时Caffeine会删除该key，NULL值只保存在NULL值区域
+    return asyncCache
+        .get(
+            key,
+            (k, executor) ->
+                ThreadPool.supplyAsync(() -> nonNullOrPark(key, loaderValue(key, valueLoader))))
+        .thenApply(result -> (T) fromStoreValue(result));
+  }
+
+  @Override
+  public <T> Map<String, T> getAll(
+      Collection<String> keys, Function<Set<String>, Map<String, T>> batchLoader) {
+    log.debug("caffeine缓存 keys={} 批量获取缓存， 没有命中的key走库批量加载", keys);
+
+    if (isStats()) {
+      getCacheStats().addRequestCount(keys.size());
+    }
+
+    Map<String, T> result = new HashMap<>(keys.size());
+    Map<Object, Object> present = new HashMap<>(cache.getAllPresent(keys));
+    present.putAll(nullCache.getAllPresent(keys));
+    present.forEach((k, v) -> addUserValue(result, (String) k, v));
+
+    Set<String> misses = new LinkedHashSet<>();
+    for (String key : keys) {
+      if (!present.containsKey(key)) {
+        misses.add(key);
+      }
+    }
+
+    if (!misses.isEmpty()) {
+      Map<String, Object> loaded = loadAll(misses, batchLoader);
+      loaded.forEach(this::putStoreValue);
+      loaded.forEach((k, v) -> addUserValue(result, k, v));
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Object> getAllPresent(Collection<String> keys) {
+    log.debug("caffeine缓存 keys={} 批量获取已有缓存", keys);
+
+    if (isStats()) {
+      getCacheStats().addRequestCount(keys.size());
+    }
+
+    Map<String, Object> result = new HashMap<>(keys.size());
+    nullCache.getAllPresent(keys).forEach((k, v) -> result.put((String) k, v));
+    cache.getAllPresent(keys).forEach((k, v) -> result.put((String) k, v));
+    return result;
+  }
+
+  @Override
+  public void putAll(Map<String, ?> values) {
+    log.debug("caffeine缓存 keys={} 批量put缓存", values.keySet());
+    values.forEach((k, v) -> putStoreValue(k, toStoreValue(v)));
+  }
+
   @Override
   public void put(String key, Object value) {
     log.debug("caffeine缓存 key={} put缓存，缓存值：{}", key, JSON.toJSONString(value));
-    this.cache.put(key, toStoreValue(value));
+    putStoreValue(key, toStoreValue(value));
   }
 
   @Override
   public Object putIfAbsent(String key, Object value) {
     log.debug("caffeine缓存 key={} putIfAbsent 缓存，缓存值：{}", key, JSON.toJSONString(value));
-    Object result = this.cache.get(key, k -> toStoreValue(value));
+    Object existing = peek(key);
+    if (existing != null) {
+      return fromStoreValue(existing);
+    }
+
+    Object storeValue = toStoreValue(value);
+    Object result =
+        storeValue instanceof NullValue
+            ? nullCache.get(key, k -> storeValue)
+            : this.cache.get(key, k -> storeValue);
     return fromStoreValue(result);
   }
 
+  @Override
+  public Object putIfAbsent(String key, Object value, long ttlMs) {
+    Object storeValue = toStoreValue(value);
+    // NULL值区域的有效时间本来就很短，不单独设置
+    if (ttlMs <= 0 || ttlMs >= expireMs || storeValue instanceof NullValue) {
+      return putIfAbsent(key, value);
+    }
+
+    log.debug(
+        "caffeine缓存 key={} putIfAbsent 缓存，有效时间{}ms，缓存值：{}",
+        key,
+        ttlMs,
+        JSON.toJSONString(value));
+    Object existing = peek(key);
+    if (existing != null) {
+      return fromStoreValue(existing);
+    }
+
+    if (varExpiration.putIfAbsent(key, storeValue, ttlMs, TimeUnit.MILLISECONDS)) {
+      nullCache.invalidate(key);
+      return value;
+    }
+    return fromStoreValue(cache.getIfPresent(key));
+  }
+
+  /**
+   * 查看已有的值，不计入请求数，也不触发主动刷新
+   *
+   * @param key 缓存key
+   * @return 已有的值，没有时返回null
+   */
+  private Object peek(String key) {
+    Object value = cache.policy().getIfPresentQuietly(key);
+    return value != null ? value : nullCache.policy().getIfPresentQuietly(key);
+  }
+
   @Override
   public void evict(String key) {
     log.debug("caffeine缓存 key={} 清除缓存", key);
+    Set<Object> evicted = this.evictedWhileRestoring;
+    if (evicted != null) {
+      evicted.add(key);
+    }
+    // 先加版本再删除，正在刷新的key一定能发现版本变化
+    evictEpochs.incrementAndGet(stripe(key));
+    refreshTtls.remove(key);
     this.cache.invalidate(key);
+    this.nullCache.invalidate(key);
   }
 
   @Override
   public void clear() {
     log.debug("caffeine缓存 清空缓存");
+    this.clearedWhileRestoring = true;
+    clearEpoch.incrementAndGet();
+    refreshTtls.clear();
     this.cache.invalidateAll();
+    this.nullCache.invalidateAll();
+  }
+
+  /**
+   * 按热度从高到低导出L1数据及过期时间点，NULL值不导出
+   *
+   * @param serializer 缓存值的序列化方式
+   * @return 快照数据
+   */
+  public List<L1Snapshot.Entry> snapshot(RedisSerializer<Object> serializer) {
+    Map<Object, Object> hottest =
+        cache
+            .policy()
+            .eviction()
+            .map(eviction -> eviction.hottest(Integer.MAX_VALUE))
+            .orElseGet(() -> new LinkedHashMap<>(cache.asMap()));
+
+    long now = System.currentTimeMillis();
+    List<L1Snapshot.Entry> entries = new ArrayList<>(hottest.size());
+    for (Map.Entry<Object, Object> e : hottest.entrySet()) {
+      OptionalLong ttlMs = varExpiration.getExpiresAfter(e.getKey(), TimeUnit.MILLISECONDS);
+      if (!ttlMs.isPresent() || ttlMs.getAsLong() <= 0) {
+        continue;
+      }
+
+      try {
+        byte[] key = ((String) e.getKey()).getBytes(StandardCharsets.UTF_8);
+        byte[] value = serializer.serialize(e.getValue());
+        entries.add(new L1Snapshot.Entry(key, now + ttlMs.getAsLong(), value));
+      } catch (SerializationException ex) {
+        log.warn("caffeine缓存 key={} 序列化异常，不保存到快照: {}", e.getKey(), ex.getMessage());
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * 从快照恢复L1数据，已经过期、恢复期间被删除的key以及已经有值的key不恢复
+   *
+   * @param entries 按热度从高到低排列的快照数据
+   * @param serializer 缓存值的序列化方式
+   * @return 恢复的条数
+   */
+  public int restore(List<L1Snapshot.Entry> entries, RedisSerializer<Object> serializer) {
+    return restore(entries, serializer, UnaryOperator.identity());
+  }
+
+  /**
+   * 从快照恢复L1数据，恢复前先用validator筛掉停机期间已经变化的数据
+   *
+   * <p>validator在开始记录删除通知之后调用，校验之后、放入之前收到的删除通知不会漏掉
+   *
+   * @param entries 按热度从高到低排列的快照数据
+   * @param serializer 缓存值的序列化方式
+   * @param validator 返回仍然有效的快照数据，保持原来的顺序
+   * @return 恢复的条数
+   */
+  public int restore(
+      List<L1Snapshot.Entry> entries,
+      RedisSerializer<Object> serializer,
+      UnaryOperator<List<L1Snapshot.Entry>> validator) {
+    Set<Object> evicted = ConcurrentHashMap.newKeySet();
+    this.evictedWhileRestoring = evicted;
+    this.clearedWhileRestoring = false;
+    int restored = 0;
+    try {
+      entries = validator.apply(entries);
+      // 从冷到热恢复，淘汰时优先保留热点数据
+      for (int i = entries.size() - 1; i >= 0 && !clearedWhileRestoring; i--) {
+        L1Snapshot.Entry e = entries.get(i);
+        long ttlMs = Math.min(e.getExpireAt() - System.currentTimeMillis(), expireMs);
+        String key = e.getKeyString();
+        if (ttlMs <= 0 || evicted.contains(key)) {
+          continue;
+        }
+
+        Object value;
+        try {
+          value = serializer.deserialize(e.getValue());
+        } catch (SerializationException ex) {
+          log.warn("caffeine缓存 key={} 快照数据反序列化异常，不恢复: {}", key, ex.getMessage());
+          continue;
+        }
+        if (value == null || value instanceof NullValue) {
+          continue;
+        }
+
+        if (varExpiration.putIfAbsent(key, value, ttlMs, TimeUnit.MILLISECONDS)) {
+          // 放入的同时被删除
+          if (evicted.contains(key)) {
+            cache.invalidate(key);
+          } else {
+            restored++;
+          }
+        }
+      }
+      if (clearedWhileRestoring) {
+        cache.invalidateAll();
+      }
+    } finally {
+      this.evictedWhileRestoring = null;
+    }
+    return restored;
+  }
+
+  /**
+   * 按是否是NULL值放到对应区域，并删除另一个区域中的旧值
+   *
+   * @param key 缓存key
+   * @param storeValue 已经转换过的缓存值
+   */
+  private void putStoreValue(Object key, Object storeValue) {
+    if (storeValue instanceof NullValue) {
+      this.nullCache.put(key, storeValue);
+      this.cache.invalidate(key);
+    } else {
+      this.cache.put(key, storeValue);
+      this.nullCache.invalidate(key);
+    }
+  }
+
+  /**
+   * NULL值放到NULL值区域并返回null，其他值原样返回
+   *
+   * @param key 缓存key
+   * @param storeValue 已经转换过的缓存值
+   * @return Object
+   */
+  private Object nonNullOrPark(Object key, Object storeValue) {
+    if (storeValue instanceof NullValue) {
+      this.nullCache.put(key, storeValue);
+      return null;
+    }
+    return storeValue;
   }
 
   /** 加载数据 */
@@ -112,19 +449,159 @@ public class CaffeineCache extends AbstractCache {
     }
   }
 
+  /** 两个版本都只增不减，和变了说明至少有一个变了 */
+  private long epoch(Object key) {
+    return clearEpoch.get() + evictEpochs.get(stripe(key));
+  }
+
+  private static int stripe(Object key) {
+    int h = key.hashCode();
+    return (h ^ (h >>> 16)) & (EPOCH_STRIPES - 1);
+  }
+
   /**
    * 根据配置获取本地缓存对象
    *
+   * @param name 缓存名称
    * @param c1Setting L1配置
-   * @return {@link Cache}
+   * @param l2Loader 从L2刷新L1的加载器，可以为NULL
+   * @param refreshTtls 刷新到的值的剩余生存时间
+   * @return {@link AsyncCache}
    */
-  private static Cache<Object, Object> getCache(C1Setting c1Setting) {
+  private static AsyncCache<Object, Object> getCache(
+      String name,
+      C1Setting c1Setting,
+      AsyncCacheLoader<Object, Object> l2Loader,
+      Map<Object, Long> refreshTtls) {
     // 根据配置创建Caffeine builder
     Caffeine<Object, Object> builder = Caffeine.newBuilder();
     builder.initialCapacity(c1Setting.getInitCap());
-    builder.maximumSize(c1Setting.getMaxSize());
-    builder.expireAfterWrite(c1Setting.getExpireSecs(), TimeUnit.SECONDS);
-    // 根据Caffeine builder创建 Cache 对象
-    return builder.build();
+    if (c1Setting.getMaxBytes() > 0 && c1Setting.getSizeEstimator() != null) {
+      // 按缓存值大小限制容量，大对象和小对象混合时内存占用可预期
+      SizeEstimator estimator = c1Setting.getSizeEstimator();
+      builder.maximumWeight(c1Setting.getMaxBytes());
+      builder.weigher((k, v) -> Math.max(0, estimator.estimate(v)));
+    } else {
+      builder.maximumSize(c1Setting.getMaxSize());
+    }
+    builder.expireAfter(
+        new L1Expiry(TimeUnit.SECONDS.toNanos(c1Setting.getExpireSecs()), refreshTtls));
+
+    int refreshSecs = c1Setting.getRefreshSecs();
+    if (refreshSecs <= 0 || l2Loader == null) {
+      // 根据Caffeine builder创建 AsyncCache 对象，同步操作使用它的同步视图
+      return builder.buildAsync();
+    }
+
+    if (refreshSecs >= c1Setting.getExpireSecs()) {
+      log.warn(
+          "caffeine缓存 {} 的refreshSecs({})不小于expireSecs({})，过期前不会刷新",
+          name,
+          refreshSecs,
+          c1Setting.getExpireSecs());
+    }
+
+    builder.refreshAfterWrite(refreshSecs, TimeUnit.SECONDS);
+    return builder.buildAsync(l2Loader);
+  }
+
+  /**
+   * 根据配置获取存放NULL值的本地缓存对象
+   *
+   * @param c1Setting L1配置
+   * @return {@link Cache}
+   */
+  private static Cache<Object, Object> getNullCache(C1Setting c1Setting) {
+    // NULL值的有效时间不超过正常数据
+    int expireSecs = c1Setting.getExpireSecs();
+    if (c1Setting.getNullExpireSecs() > 0) {
+      expireSecs =
+          expireSecs > 0
+              ? Math.min(c1Setting.getNullExpireSecs(), expireSecs)
+              : c1Setting.getNullExpireSecs();
+    }
+    return Caffeine.newBuilder()
+        .maximumSize(c1Setting.getNullMaxSize())
+        .expireAfterWrite(expireSecs, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * 写入和更新时使用L1的有效时间，读取不改变剩余时间，效果和expireAfterWrite相同
+   *
+   * <p>从L2放到L1的数据通过 {@link VarExpiration} 单独设置不超过L2剩余生存时间的有效时间；
+   * 主动刷新的结果由Caffeine放入，有效时间取刷新时记下的L2剩余生存时间
+   */
+  private static class L1Expiry implements Expiry<Object, Object> {
+    private final long expireNanos;
+
+    private final Map<Object, Long> refreshTtls;
+
+    L1Expiry(long expireNanos, Map<Object, Long> refreshTtls) {
+      this.expireNanos = expireNanos;
+      this.refreshTtls = refreshTtls;
+    }
+
+    @Override
+    public long expireAfterCreate(Object key, Object value, long currentTime) {
+      return expireNanos(key);
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        Object key, Object value, long currentTime, long currentDuration) {
+      return expireNanos(key);
+    }
+
+    /** 刷新结果被丢弃时留下的剩余生存时间只会让下一次写入的有效时间变短，不会读到过期数据 */
+    private long expireNanos(Object key) {
+      Long ttl = refreshTtls.remove(key);
+      return ttl == null ? expireNanos : Math.min(ttl, expireNanos);
+    }
+
+    @Override
+    public long expireAfterRead(
+        Object key, Object value, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+
+  /**
+   * 从L2加载L1数据，在有界的异步线程池中执行，线程池满时放弃本次刷新，旧值继续有效直到过期
+   *
+   * <p>L2中已经没有数据或者是NULL值时返回NULL，Caffeine会将L1中对应的数据删除，
+   * NULL值由下次读取放到NULL值区域
+   *
+   * <p>读取L2前记下删除版本，读取后版本变了说明刷新期间key被删除，读到的可能是旧值，同样返回NULL，
+   * 否则Caffeine会把刷新结果重新放回已经删除的key
+   */
+  private class L2Loader implements AsyncCacheLoader<Object, Object> {
+    private final Function<String, RedisValue> l2Loader;
+
+    L2Loader(Function<String, RedisValue> l2Loader) {
+      this.l2Loader = l2Loader;
+    }
+
+    @Override
+    public CompletableFuture<Object> asyncLoad(Object key, Executor executor) {
+      long epoch = epoch(key);
+      return CompletableFuture.supplyAsync(
+          () -> {
+            RedisValue v = l2Loader.apply((String) key);
+            if (epoch(key) != epoch) {
+              log.debug("caffeine缓存 key={} 刷新期间被删除，丢弃刷新的值", key);
+              return null;
+            }
+            Object value = v.getValue();
+            if (value == null || value instanceof NullValue) {
+              return null;
+            }
+            if (v.getTtlMs() > 0) {
+              refreshTtls.put(key, TimeUnit.MILLISECONDS.toNanos(v.getTtlMs()));
+            }
+            return value;
+          },
+          ThreadPool.asyncExecutor());
+    }
   }
 }
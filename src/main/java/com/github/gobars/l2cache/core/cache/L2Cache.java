@@ -1,16 +1,33 @@
 package com.github.gobars.l2cache.core.cache;
 
 import com.alibaba.fastjson.JSON;
+import com.github.gobars.l2cache.core.bloom.BloomFilter;
+import com.github.gobars.l2cache.core.listener.InvalidationMode;
+import com.github.gobars.l2cache.core.listener.RedisBatchPublisher;
 import com.github.gobars.l2cache.core.listener.RedisPubSubMessage;
 import com.github.gobars.l2cache.core.listener.RedisPubSubMessageType;
 import com.github.gobars.l2cache.core.listener.RedisPublisher;
 import com.github.gobars.l2cache.core.redis.client.RedisClient;
+import com.github.gobars.l2cache.core.redis.client.RedisValue;
 import com.github.gobars.l2cache.core.setting.L2Setting;
 import com.github.gobars.l2cache.core.stats.CacheStats;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
 
 /**
  * 多级缓存
@@ -19,6 +36,9 @@ import java.util.concurrent.Callable;
  */
 @Slf4j
 public class L2Cache extends AbstractCache {
+  /** L1失效版本的分段数 */
+  private static final int EPOCH_STRIPES = 1024;
+
   /** redis 客户端 */
   private final RedisClient redisClient;
 
@@ -34,6 +54,23 @@ public class L2Cache extends AbstractCache {
   /** 是否使用L1， 默认true */
   private boolean useL1;
 
+  /** L1失效通知的方式，默认广播 */
+  @Setter private InvalidationMode invalidationMode = InvalidationMode.PUBSUB;
+
+  /** 合并发布L1删除消息，为null时每次删除立即发布 */
+  @Setter private RedisBatchPublisher evictPublisher;
+
+  /** 布隆过滤器，没有开启时为null */
+  @Getter private final BloomFilter bloomFilter;
+
+  /**
+   * L1失效版本，按key分段，删除L1前先加一。查询L2前记下版本，放入L1后版本变了说明期间有删除，放入的可能是旧值，再删掉
+   */
+  private final AtomicLongArray evictEpochs = new AtomicLongArray(EPOCH_STRIPES);
+
+  /** L1清空版本，清空L1前先加一 */
+  private final AtomicLong clearEpoch = new AtomicLong();
+
   /**
    * 创建一个多级缓存对象
    *
@@ -71,6 +108,10 @@ public class L2Cache extends AbstractCache {
     this.cache2 = cache2;
     this.useL1 = useL1;
     this.l2Setting = l2Setting;
+    this.bloomFilter =
+        l2Setting.getBloomSetting() == null
+            ? null
+            : new BloomFilter(redisClient, name, l2Setting.getBloomSetting());
   }
 
   @Override
@@ -81,52 +122,188 @@ public class L2Cache extends AbstractCache {
   @Override
   public Object get(String key) {
     Object result = null;
+    String k1 = l1Key(key);
     if (useL1) {
-      result = cache1.get(key);
+      result = cache1.get(k1);
       log.debug("查询L1。 key={},返回值是:{}", key, JSON.toJSONString(result));
     }
     if (result == null) {
-      result = cache2.get(key);
-      cache1.putIfAbsent(key, result);
+      result = getFromL2(key, k1);
       log.debug("查询L2,并将数据放到L1。 key={},返回值是:{}", key, JSON.toJSONString(result));
     }
     return fromStoreValue(result);
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public <T> T get(String key, Class<T> type) {
+    String k1 = l1Key(key);
     if (useL1) {
-      Object result = cache1.get(key, type);
+      Object result = cache1.get(k1, type);
       log.debug("查询L1。 key={},返回值是:{}", key, JSON.toJSONString(result));
       if (result != null) {
         return (T) fromStoreValue(result);
       }
     }
 
-    T result = cache2.get(key, type);
-    cache1.putIfAbsent(key, result);
+    T result = (T) fromStoreValue(getFromL2(key, k1));
     log.debug("查询L2,并将数据放到L1。 key={},返回值是:{}", key, JSON.toJSONString(result));
     return result;
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public <T> T get(String key, Callable<T> valueLoader) {
+    String k1 = l1Key(key);
     if (useL1) {
-      Object result = cache1.get(key);
+      Object result = cache1.get(k1);
       log.debug("查询L1。 key={},返回值是:{}", key, JSON.toJSONString(result));
       if (result != null) {
         return (T) fromStoreValue(result);
       }
     }
-    T result = cache2.get(key, valueLoader);
-    cache1.putIfAbsent(key, result);
+    if (rejectedByBloom(key)) {
+      return null;
+    }
+
+    T result;
+    long epoch = epoch(key);
+    if (cache2 instanceof RedisCache) {
+      RedisValue v = ((RedisCache) cache2).getWithTtl(key, valueLoader);
+      result = (T) v.getValue();
+      fillL1(key, k1, epoch, result, v.getTtlMs());
+    } else {
+      result = cache2.get(key, valueLoader);
+      fillL1(key, k1, epoch, result, 0);
+    }
     log.debug("查询L2,并将数据放到L1。 key={},返回值是:{}", key, JSON.toJSONString(result));
     return result;
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> CompletableFuture<T> getAsync(String key, Callable<T> valueLoader) {
+    String k1 = l1Key(key);
+    if (useL1) {
+      Object result = cache1.get(k1);
+      log.debug("查询L1。 key={},返回值是:{}", key, JSON.toJSONString(result));
+      if (result != null) {
+        return CompletableFuture.completedFuture((T) fromStoreValue(result));
+      }
+    }
+    if (rejectedByBloom(key)) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    long epoch = epoch(key);
+    if (!(cache2 instanceof RedisCache)) {
+      return cache2
+          .getAsync(key, valueLoader)
+          .thenApply(
+              result -> {
+                fillL1(key, k1, epoch, result, 0);
+                log.debug("异步查询L2,并将数据放到L1。 key={},返回值是:{}", key, JSON.toJSONString(result));
+                return result;
+              });
+    }
+
+    return ((RedisCache) cache2)
+        .getWithTtlAsync(key, valueLoader)
+        .thenApply(
+            v -> {
+              T result = (T) v.getValue();
+              fillL1(key, k1, epoch, result, v.getTtlMs());
+              log.debug("异步查询L2,并将数据放到L1。 key={},返回值是:{}", key, JSON.toJSONString(result));
+              return result;
+            });
+  }
+
+  @Override
+  public <T> Map<String, T> getAll(
+      Collection<String> keys, Function<Set<String>, Map<String, T>> batchLoader) {
+    if (!useL1) {
+      return cache2.getAll(keys, batchLoader);
+    }
+
+    // 先查L1，未命中的key一次MGET查L2，L2也未命中的key才交给batchLoader，结果回填L1
+    long g = generation();
+    String prefix = g == 0 ? "" : RedisCacheKey.generationPrefix(g);
+    Map<String, String> k1s = new LinkedHashMap<>(keys.size() * 2);
+    keys.forEach(key -> k1s.put(prefix.concat(key), key));
+
+    Map<String, T> result = new HashMap<>(keys.size() * 2);
+    Set<String> misses = new LinkedHashSet<>(keys);
+    cache1
+        .getAllPresent(k1s.keySet())
+        .forEach(
+            (k1, value) -> {
+              String key = k1s.get(k1);
+              misses.remove(key);
+              Object v = fromStoreValue(value);
+              if (v != null) {
+                result.put(key, (T) v);
+              }
+            });
+    if (misses.isEmpty()) {
+      log.debug("批量查询L1全部命中。 keys={}", keys);
+      return result;
+    }
+
+    Map<String, Long> epochs = new HashMap<>(misses.size() * 2);
+    misses.forEach(key -> epochs.put(key, epoch(key)));
+    Map<String, RedisValue> loaded = getAllFromL2(misses, batchLoader);
+    // L2和batchLoader都没有的key回填为NULL值，有效时间不超过L2的剩余生存时间
+    for (String key : misses) {
+      RedisValue v = loaded.get(key);
+      Object value = v == null ? null : v.getValue();
+      cache1.putIfAbsent(prefix.concat(key), value, v == null ? 0 : v.getTtlMs());
+      if (value != null) {
+        result.put(key, (T) value);
+      }
+    }
+    // 回填期间被删除的key，回填的可能是旧值
+    epochs.forEach(
+        (key, epoch) -> {
+          if (epoch(key) != epoch) {
+            cache1.evict(prefix.concat(key));
+          }
+        });
+    log.debug("批量查询L1和L2。 keys={},返回key:{}", keys, result.keySet());
+    return result;
+  }
+
+  /**
+   * 批量查询L2，同时取回剩余生存时间
+   *
+   * @param keys L1未命中的key
+   * @param batchLoader 批量数据加载器
+   * @return key对应的用户值及剩余生存时间(毫秒)，L2不是redis时剩余生存时间为0，表示不限制
+   */
+  private <T> Map<String, RedisValue> getAllFromL2(
+      Set<String> keys, Function<Set<String>, Map<String, T>> batchLoader) {
+    if (cache2 instanceof RedisCache) {
+      return ((RedisCache) cache2).getAllWithTtl(keys, batchLoader);
+    }
+
+    Map<String, RedisValue> result = new HashMap<>(keys.size() * 2);
+    cache2.getAll(keys, batchLoader).forEach((k, v) -> result.put(k, new RedisValue(v, 0)));
+    return result;
+  }
+
+  @Override
+  public void putAll(Map<String, ?> values) {
+    cache2.putAll(values);
+    values.forEach(this::putBloom);
+    // 删除L1
+    if (useL1) {
+      deleteFirstCache(values.keySet());
+    }
+  }
+
   @Override
   public void put(String key, Object value) {
     cache2.put(key, value);
+    putBloom(key, value);
     // 删除L1
     if (useL1) {
       deleteFirstCache(key);
@@ -136,6 +313,7 @@ public class L2Cache extends AbstractCache {
   @Override
   public Object putIfAbsent(String key, Object value) {
     Object result = cache2.putIfAbsent(key, value);
+    putBloom(key, value);
     // 删除L1
     if (useL1) {
       deleteFirstCache(key);
@@ -158,6 +336,12 @@ public class L2Cache extends AbstractCache {
     // 删除的时候要先删除L2再删除L1，否则有并发问题
     cache2.clear();
     if (useL1) {
+      // 先同步清除本节点的L1，其他节点的L1通过消息清除，按代数清空时L2已经换了代数，L1跟着换
+      if (generation() == 0) {
+        clearL1();
+      } else {
+        clearEpoch.incrementAndGet();
+      }
       // 清除L1需要用到redis的订阅/发布模式，否则集群中其他服服务器节点的L1数据无法删除
       RedisPubSubMessage message = new RedisPubSubMessage();
       message.setCacheName(getName());
@@ -167,11 +351,165 @@ public class L2Cache extends AbstractCache {
     }
   }
 
+  /**
+   * 查询L2并放到L1，L1的有效时间不超过L2的剩余生存时间
+   *
+   * @param key 缓存key
+   * @param k1 L1中的key，查询L2前确定，代数只增不减，放到老代数下的值不会被读到
+   * @return L2中的缓存值
+   */
+  private Object getFromL2(String key, String k1) {
+    long epoch = epoch(key);
+    if (!(cache2 instanceof RedisCache)) {
+      Object result = cache2.get(key);
+      fillL1(key, k1, epoch, result, 0);
+      return result;
+    }
+
+    RedisValue v = ((RedisCache) cache2).getWithTtl(key);
+    fillL1(key, k1, epoch, v.getValue(), v.getTtlMs());
+    return v.getValue();
+  }
+
+  /**
+   * 删除本节点的L1，收到其他节点的删除消息时也通过这个方法删除
+   *
+   * @param key 缓存key
+   */
+  public void evictL1(String key) {
+    // 先加版本再删除，正在回填的线程一定能发现版本变化
+    evictEpochs.incrementAndGet(stripe(key));
+    cache1.evict(l1Key(key));
+  }
+
+  /** 清空本节点的全部L1，错过了删除消息时使用，错过的可能是清空消息，同时重新读取代数 */
+  public void clearL1() {
+    clearEpoch.incrementAndGet();
+    cache1.clear();
+    if (!(cache2 instanceof RedisCache)) {
+      return;
+    }
+    try {
+      ((RedisCache) cache2).refreshGeneration();
+    } catch (Exception e) {
+      // 本地的代数过期后读取时还会重试
+      log.warn("读取缓存{}的代数失败：{}", getName(), e.getMessage());
+    }
+  }
+
+  /**
+   * 收到其他节点的清空消息时清空L1
+   *
+   * <p>按代数清空时只从redis读取新的代数，老代数下的L1不再被读到，等过期或者被淘汰，不需要遍历L1
+   */
+  public void invalidateL1() {
+    if (generation() == 0) {
+      clearL1();
+      return;
+    }
+
+    clearEpoch.incrementAndGet();
+    ((RedisCache) cache2).refreshGeneration();
+  }
+
+  /**
+   * L2的当前代数，L1的key也带上代数，清空时不需要遍历L1
+   *
+   * @return 代数，没有开启按代数清空时是0
+   */
+  public long generation() {
+    return cache2 instanceof RedisCache ? ((RedisCache) cache2).getGeneration() : 0;
+  }
+
+  /** L1中的key，代数大于0时加上代数前缀 */
+  private String l1Key(String key) {
+    long g = generation();
+    return g == 0 ? key : RedisCacheKey.generationPrefix(g).concat(key);
+  }
+
+  /**
+   * 把L2的值放到L1，放入后版本和查询L2前不一致时删掉刚放入的值
+   *
+   * <p>查到的值不为null时放到布隆过滤器，回源加载的key和redis被清空后重新写入的key都不会被误拒
+   *
+   * @param key 缓存key
+   * @param k1 L1中的key
+   * @param epoch 查询L2前的版本
+   * @param value 缓存值
+   * @param ttlMs L2的剩余生存时间(毫秒)，小于等于0表示不限制
+   */
+  private void fillL1(String key, String k1, long epoch, Object value, long ttlMs) {
+    putBloom(key, value);
+    cache1.putIfAbsent(k1, value, ttlMs);
+    if (epoch(key) != epoch) {
+      log.debug("回填L1期间key被删除，丢弃回填的值。 key={}", key);
+      cache1.evict(k1);
+    }
+  }
+
+  /** 两个版本都只增不减，和变了说明至少有一个变了 */
+  private long epoch(String key) {
+    return clearEpoch.get() + evictEpochs.get(stripe(key));
+  }
+
+  private static int stripe(String key) {
+    int h = key.hashCode();
+    return (h ^ (h >>> 16)) & (EPOCH_STRIPES - 1);
+  }
+
+  /**
+   * 布隆过滤器判断key一定不存在时拒绝本次查询
+   *
+   * @param key 缓存key
+   * @return true 表示拒绝
+   */
+  private boolean rejectedByBloom(String key) {
+    if (bloomFilter == null || bloomFilter.mightContain(key)) {
+      return false;
+    }
+
+    log.debug("布隆过滤器判断key不存在，直接返回null。 key={}", key);
+    return true;
+  }
+
+  /**
+   * 把值不为null的key放到布隆过滤器
+   *
+   * @param key 缓存key
+   * @param value 缓存值
+   */
+  private void putBloom(String key, Object value) {
+    if (bloomFilter != null && fromStoreValue(value) != null) {
+      bloomFilter.put(key);
+    }
+  }
+
   private void deleteFirstCache(String key) {
+    deleteFirstCache(Collections.singletonList(key));
+  }
+
+  private void deleteFirstCache(Collection<String> keys) {
+    // 先同步删除本节点的L1，不需要等自己发布的消息回来，其他节点的L1通过消息删除
+    keys.forEach(this::evictL1);
+    if (invalidationMode == InvalidationMode.TRACKING || keys.isEmpty()) {
+      // L2的修改由redis推送给读过这个key的节点(包括当前节点)，不需要广播
+      return;
+    }
+
     // 删除L1需要用到redis的Pub/Sub（订阅/发布）模式，否则集群中其他服服务器节点的L1数据无法删除
+    if (evictPublisher != null) {
+      // 在时间窗口内合并成一条多key消息
+      evictPublisher.evictAll(getName(), keys);
+      return;
+    }
+
     RedisPubSubMessage message = new RedisPubSubMessage();
     message.setCacheName(getName());
-    message.setKey(key);
+    if (keys.size() == 1) {
+      message.setKey(keys.iterator().next());
+    } else {
+      message.setKeys(new ArrayList<>(keys));
+    }
     message.setMessageType(RedisPubSubMessageType.EVICT);
     // 发布消息
     RedisPublisher.publisher(redisClient, message);
@@ -0,0 +1,357 @@
+package com.github.gobars.l2cache.core.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.github.gobars.l2cache.core.redis.serializer.RedisSerializer;
+import com.github.gobars.l2cache.core.redis.serializer.SerializationException;
+import com.github.gobars.l2cache.core.setting.C1Setting;
+import com.github.gobars.l2cache.core.support.NullValue;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 堆外内存实现的L1，缓存值序列化后存放在直接内存中，不增加GC压力
+ *
+ * <p>堆外内存被切分成固定大小的slab，写入时顺序追加到当前slab，写满后切换到下一个slab；
+ * 所有slab都用过之后按FIFO回收最早写入的slab，该slab中的key一并失效。堆上只保存key到位置的索引
+ *
+ * <p>覆盖写入的旧值占用的空间在所在slab被回收时才释放，适合读多写少的大数据量缓存
+ *
+ * @author bingoohuang
+ */
+@Slf4j
+public class OffHeapCache extends AbstractCache {
+  /** 没有配置maxBytes时的默认容量 */
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  /** slab个数，每次淘汰回收1/SLAB_COUNT的容量 */
+  private static final int SLAB_COUNT = 16;
+
+  /** slab最小字节数 */
+  private static final int MIN_SLAB_BYTES = 1024 * 1024;
+
+  /** 缓存值的序列化方式 */
+  private final RedisSerializer<Object> serializer;
+
+  /** key到堆外位置的索引 */
+  private final ConcurrentMap<String, Entry> index = new ConcurrentHashMap<>();
+
+  /** 堆外内存块 */
+  private final Slab[] slabs;
+
+  /** 每个slab的字节数，也是单个缓存值的最大字节数 */
+  private final int slabBytes;
+
+  /** 缓存有效时间(毫秒) */
+  private final long expireMs;
+
+  /** NULL值的有效时间(毫秒) */
+  private final long nullExpireMs;
+
+  /** 当前写入的slab下标 */
+  private int current;
+
+  /**
+   * 使用name和{@link C1Setting}创建一个 {@link OffHeapCache} 实例
+   *
+   * @param name 缓存名称
+   * @param c1Setting L1配置 {@link C1Setting}
+   * @param stats 是否开启统计模式
+   * @param serializer 缓存值的序列化方式
+   */
+  public OffHeapCache(
+      String name, C1Setting c1Setting, boolean stats, RedisSerializer<Object> serializer) {
+    super(stats, name);
+    this.serializer = serializer;
+    this.expireMs = c1Setting.getExpireSecs() * 1000L;
+    // NULL值的有效时间不超过正常数据
+    long nullMs = c1Setting.getNullExpireSecs() * 1000L;
+    if (nullMs <= 0) {
+      nullMs = expireMs;
+    } else if (expireMs > 0) {
+      nullMs = Math.min(nullMs, expireMs);
+    }
+    this.nullExpireMs = nullMs;
+
+    long maxBytes = c1Setting.getMaxBytes() > 0 ? c1Setting.getMaxBytes() : DEFAULT_MAX_BYTES;
+    this.slabBytes =
+        (int) Math.min(Integer.MAX_VALUE, Math.max(maxBytes / SLAB_COUNT, MIN_SLAB_BYTES));
+    int slabCount = (int) Math.max(2, maxBytes / slabBytes);
+    this.slabs = new Slab[slabCount];
+    for (int i = 0; i < slabCount; i++) {
+      slabs[i] = new Slab(ByteBuffer.allocateDirect(slabBytes));
+    }
+    log.info("堆外缓存 {} 初始化, slab个数={}, 每个slab字节数={}", name, slabCount, slabBytes);
+  }
+
+  @Override
+  public OffHeapCache getNativeCache() {
+    return this;
+  }
+
+  @Override
+  public Object get(String key) {
+    log.debug("堆外缓存 key={} 获取缓存", key);
+
+    if (isStats()) {
+      getCacheStats().addRequestCount(1);
+    }
+
+    return read(key);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(String key, Callable<T> valueLoader) {
+    log.debug("堆外缓存 key={} 获取缓存， 如果没有命中就走库加载缓存", key);
+
+    if (isStats()) {
+      getCacheStats().addRequestCount(1);
+    }
+
+    Object result = read(key);
+    if (result == null) {
+      // 这里不做按key的并发合并，同一个key的并发回源由L2的single-flight合并
+      result = loaderValue(key, valueLoader);
+      write(key, result, 0, false);
+    }
+    return (T) fromStoreValue(result);
+  }
+
+  @Override
+  public void put(String key, Object value) {
+    log.debug("堆外缓存 key={} put缓存，缓存值：{}", key, JSON.toJSONString(value));
+    write(key, toStoreValue(value), 0, false);
+  }
+
+  @Override
+  public Object putIfAbsent(String key, Object value) {
+    return putIfAbsent(key, value, 0);
+  }
+
+  @Override
+  public Object putIfAbsent(String key, Object value, long ttlMs) {
+    log.debug("堆外缓存 key={} putIfAbsent 缓存，缓存值：{}", key, JSON.toJSONString(value));
+    Object existing = read(key);
+    if (existing != null) {
+      return fromStoreValue(existing);
+    }
+
+    // 检查和写入在同一把锁内，并发的putIfAbsent只有一个能写入
+    if (write(key, toStoreValue(value), ttlMs, true)) {
+      return value;
+    }
+    existing = read(key);
+    return existing != null ? fromStoreValue(existing) : value;
+  }
+
+  @Override
+  public void evict(String key) {
+    log.debug("堆外缓存 key={} 清除缓存", key);
+    index.remove(key);
+  }
+
+  @Override
+  public synchronized void clear() {
+    log.debug("堆外缓存 清空缓存");
+    for (Slab slab : slabs) {
+      slab.recycle();
+    }
+    index.clear();
+    current = 0;
+  }
+
+  /**
+   * 读取缓存值，过期、被回收或者无法反序列化时返回null
+   *
+   * @param key 缓存key
+   * @return 已经转换过的缓存值
+   */
+  private Object read(String key) {
+    Entry entry = index.get(key);
+    if (entry == null) {
+      return null;
+    }
+
+    if (entry.expireAt <= System.currentTimeMillis()) {
+      index.remove(key, entry);
+      return null;
+    }
+
+    byte[] bytes = entry.slab.read(entry.generation, entry.offset, entry.length);
+    // slab已经被回收，数据可能已经被覆盖
+    if (bytes == null) {
+      index.remove(key, entry);
+      return null;
+    }
+
+    try {
+      return serializer.deserialize(bytes);
+    } catch (SerializationException e) {
+      log.warn("堆外缓存 key={} 反序列化异常，删除该缓存: {}", key, e.getMessage());
+      index.remove(key, entry);
+      return null;
+    }
+  }
+
+  /**
+   * 序列化并写入缓存值，超过slab大小或者无法序列化的值不缓存
+   *
+   * @param key 缓存key
+   * @param storeValue 已经转换过的缓存值
+   * @param maxTtlMs 最长有效时间(毫秒)，小于等于0表示不限制
+   * @param onlyIfAbsent 为true时已经有未过期的值就不写入
+   * @return 是否写入
+   */
+  private boolean write(String key, Object storeValue, long maxTtlMs, boolean onlyIfAbsent) {
+    byte[] bytes;
+    try {
+      bytes = serializer.serialize(storeValue);
+    } catch (SerializationException e) {
+      log.warn("堆外缓存 key={} 序列化异常，不放入L1: {}", key, e.getMessage());
+      index.remove(key);
+      return false;
+    }
+    if (bytes == null || bytes.length > slabBytes) {
+      log.warn("堆外缓存 key={} 的值超过slab大小{}字节，不放入L1", key, slabBytes);
+      index.remove(key);
+      return false;
+    }
+
+    long ttlMs = storeValue instanceof NullValue ? nullExpireMs : expireMs;
+    if (maxTtlMs > 0) {
+      ttlMs = Math.min(ttlMs, maxTtlMs);
+    }
+    return append(key, bytes, System.currentTimeMillis() + ttlMs, onlyIfAbsent);
+  }
+
+  private synchronized boolean append(
+      String key, byte[] bytes, long expireAt, boolean onlyIfAbsent) {
+    if (onlyIfAbsent && isLive(index.get(key))) {
+      return false;
+    }
+
+    Slab slab = slabs[current];
+    if (slab.remaining() < bytes.length) {
+      current = (current + 1) % slabs.length;
+      slab = slabs[current];
+      evictSlab(slab);
+    }
+
+    int offset = slab.append(key, bytes);
+    index.put(key, new Entry(slab, slab.generation, offset, bytes.length, expireAt));
+    return true;
+  }
+
+  /** 索引项没有过期，所在的slab也没有被回收 */
+  private static boolean isLive(Entry entry) {
+    return entry != null
+        && entry.expireAt > System.currentTimeMillis()
+        && entry.slab.generation == entry.generation;
+  }
+
+  /**
+   * 回收slab，并删除索引中仍然指向它的key
+   *
+   * @param slab 需要回收的slab
+   */
+  private void evictSlab(Slab slab) {
+    List<String> keys = slab.recycle();
+    for (String key : keys) {
+      index.computeIfPresent(key, (k, e) -> e.slab == slab ? null : e);
+    }
+    if (!keys.isEmpty()) {
+      log.debug("堆外缓存 {} 淘汰slab, key个数={}", getName(), keys.size());
+    }
+  }
+
+  /** 加载数据 */
+  private <T> Object loaderValue(String key, Callable<T> valueLoader) {
+    long start = 0L;
+    if (isStats()) {
+      start = System.currentTimeMillis();
+      getCacheStats().addCachedRequestCount(1);
+    }
+
+    try {
+      T t = valueLoader.call();
+
+      if (isStats()) {
+        getCacheStats().addCachedRequestTime(System.currentTimeMillis() - start);
+      }
+
+      log.debug("堆外缓存 key={} 从库加载缓存 value={}", key, JSON.toJSONString(t));
+
+      return toStoreValue(t);
+    } catch (Exception e) {
+      throw new LoaderCacheValueException(key, e);
+    }
+  }
+
+  /** 索引项，记录缓存值所在的slab及写入时slab的代数 */
+  @AllArgsConstructor
+  private static class Entry {
+    private final Slab slab;
+    private final long generation;
+    private final int offset;
+    private final int length;
+    private final long expireAt;
+  }
+
+  /** 一块堆外内存，只追加写入，回收时代数加1。读取和写入、回收互斥，读到的数据不会被回收覆盖 */
+  private static class Slab {
+    private final ByteBuffer buffer;
+
+    /** 写入这个slab的key，回收时用来清理索引 */
+    private List<String> keys = new ArrayList<>();
+
+    /** 每回收一次加1，读取时比较代数判断数据是否已经被回收 */
+    private volatile long generation;
+
+    Slab(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    int remaining() {
+      return buffer.remaining();
+    }
+
+    synchronized int append(String key, byte[] bytes) {
+      int offset = buffer.position();
+      buffer.put(bytes);
+      keys.add(key);
+      return offset;
+    }
+
+    /**
+     * 在锁内检查代数并复制数据
+     *
+     * @return 数据，slab已经被回收时返回null
+     */
+    synchronized byte[] read(long generation, int offset, int length) {
+      if (this.generation != generation) {
+        return null;
+      }
+
+      byte[] bytes = new byte[length];
+      ByteBuffer dup = buffer.duplicate();
+      dup.position(offset);
+      dup.get(bytes);
+      return bytes;
+    }
+
+    synchronized List<String> recycle() {
+      generation++;
+      buffer.clear();
+      List<String> old = keys;
+      keys = new ArrayList<>();
+      return old;
+    }
+  }
+}
@@ -1,20 +1,32 @@
 package com.github.gobars.l2cache.core.cache;
 
 import com.alibaba.fastjson.JSON;
+import com.github.gobars.l2cache.core.listener.RedisPubSubMessage;
+import com.github.gobars.l2cache.core.listener.RedisPubSubMessageType;
+import com.github.gobars.l2cache.core.listener.RedisPublisher;
 import com.github.gobars.l2cache.core.redis.client.RedisClient;
+import com.github.gobars.l2cache.core.redis.client.RedisValue;
 import com.github.gobars.l2cache.core.setting.C2Setting;
+import com.github.gobars.l2cache.core.setting.RefreshPolicy;
 import com.github.gobars.l2cache.core.stats.CacheStats;
+import com.github.gobars.l2cache.core.support.NullValue;
 import com.github.gobars.l2cache.core.support.RedisLock;
-import com.github.gobars.l2cache.core.support.ThreadAwaiter;
 import com.github.gobars.l2cache.core.support.ThreadPool;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
-import org.springframework.util.CollectionUtils;
 
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 /**
  * 基于Redis实现的L2
@@ -23,11 +35,31 @@ import java.util.concurrent.TimeUnit;
  */
 @Slf4j
 public class RedisCache extends AbstractCache {
-  /** 刷新缓存等待时间，单位毫秒 */
+  /** 未获得锁时最长等待时间，单位毫秒，收到加载完成通知会提前唤醒 */
   private static final long WAIT_TIME_MS = 500;
 
-  /** 等待线程容器 */
-  private final ThreadAwaiter container = new ThreadAwaiter();
+  /** 等锁节点登记的等待标记，持有锁的节点加载完成后只在有等待标记时发布加载完成的消息 */
+  private static final String WAITERS_SUFFIX = "_sync_waiters";
+
+  /** 等待标记的有效时间，和回源锁相同 */
+  private static final long WAITERS_EXPIRE_SECS = 10;
+
+  /** clear时每页SCAN的key个数 */
+  private static final int CLEAR_PAGE_SIZE = 1000;
+
+  /** 缓存代数的redis key前缀，后面拼缓存名称，不在缓存前缀下，clear时不会被删除 */
+  public static final String GENERATION_KEY_PREFIX = "l2cache:generation:";
+
+  /** 本地缓存的代数的有效时间(毫秒)，错过了清空消息的节点最迟在这个时间后切换到新的代数 */
+  private static final long GENERATION_TTL_MS = 1000;
+
+  /** 正在回源的key，同一个JVM里同一个key只有一个线程去竞争分布式锁，其他线程共享它的结果 */
+  private final ConcurrentMap<String, CompletableFuture<Object>> inFlight =
+      new ConcurrentHashMap<>();
+
+  /** 等待其他节点加载完成的信号，收到 {@link RedisPubSubMessageType#LOADED} 消息时完成 */
+  private final ConcurrentMap<String, CompletableFuture<Void>> loadedSignals =
+      new ConcurrentHashMap<>();
 
   /** redis 客户端 */
   private final RedisClient redisClient;
@@ -35,6 +67,9 @@ public class RedisCache extends AbstractCache {
   /** 缓存有效时间,秒 */
   private final long expireSecs;
 
+  /** NULL值的有效时间,秒，0表示和expireSecs相同 */
+  private long nullExpireSecs = 0;
+
   /** 缓存主动在失效前强制刷新缓存的时间 单位：秒 */
   private final long preloadSecs;
 
@@ -44,6 +79,21 @@ public class RedisCache extends AbstractCache {
   /** 是否使用缓存名称作为 redis key 前缀 */
   private final boolean usePrefix;
 
+  /** 主动刷新策略 */
+  private RefreshPolicy refreshPolicy = RefreshPolicy.PRELOAD_WINDOW;
+
+  /** XFetch刷新策略的系数 */
+  private double refreshBeta = 1.0;
+
+  /** 清空缓存时是否只把代数加1 */
+  private boolean generationClear = false;
+
+  /** 本地缓存的代数，-1表示还没有从redis读取，只增不减 */
+  private final AtomicLong generation = new AtomicLong(-1);
+
+  /** 上次从redis读取代数的时间 */
+  private final AtomicLong generationCheckedAt = new AtomicLong();
+
   /**
    * @param name 缓存名称
    * @param redisClient redis客户端 redis 客户端
@@ -59,6 +109,14 @@ public class RedisCache extends AbstractCache {
         c2Setting.isForceRefresh(),
         c2Setting.isUsePrefix(),
         stats);
+    this.nullExpireSecs = c2Setting.getNullExpireSecs();
+    this.refreshPolicy = c2Setting.getRefreshPolicy();
+    this.refreshBeta = c2Setting.getRefreshBeta();
+    if (c2Setting.isGenerationClear() && !(usePrefix && expireSecs > 0)) {
+      log.warn("缓存{}没有使用缓存前缀或者没有过期时间，老的key无法自动删除，不能按代数清空", name);
+    } else {
+      this.generationClear = c2Setting.isGenerationClear();
+    }
   }
 
   /**
@@ -93,31 +151,107 @@ public class RedisCache extends AbstractCache {
 
   @Override
   public Object get(String key) {
+    return getWithTtl(key).getValue();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(String key, Callable<T> valueLoader) {
+    return (T) getWithTtl(key, valueLoader).getValue();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> CompletableFuture<T> getAsync(String key, Callable<T> valueLoader) {
+    return getWithTtlAsync(key, valueLoader).thenApply(v -> (T) v.getValue());
+  }
+
+  /**
+   * 和 {@link #get(String)} 相同，同时返回剩余生存时间，GET和PTTL一次往返取回
+   *
+   * @param key 缓存key
+   * @return value是缓存值，ttlMs是剩余生存时间(毫秒)
+   */
+  RedisValue getWithTtl(String key) {
     if (isStats()) {
       getCacheStats().addRequestCount(1);
     }
 
     RedisCacheKey k = getRedisCacheKey(key);
     log.debug("redis缓存查询 key= {} 查询redis缓存", k.getKey());
-    return redisClient.get(k.getKey());
+    return redisClient.getWithTtl(k.getKey());
   }
 
-  @Override
-  public <T> T get(String key, Callable<T> valueLoader) {
+  /**
+   * 和 {@link #get(String, Callable)} 相同，同时返回剩余生存时间，L2Cache据此限制L1的有效时间
+   *
+   * @param key 缓存key
+   * @param valueLoader 数据加载器
+   * @return value是用户值，ttlMs是剩余生存时间(毫秒)，执行了被缓存方法时是写入时设置的有效时间
+   */
+  RedisValue getWithTtl(String key, Callable<?> valueLoader) {
     if (isStats()) {
       getCacheStats().addRequestCount(1);
     }
 
     RedisCacheKey k = getRedisCacheKey(key);
     log.debug("redis缓存查询 key= {}", k.getKey());
-    // 先获取缓存，如果有直接返回
-    Object result = redisClient.get(k.getKey());
-    if (result != null || redisClient.hasKey(k.getKey())) {
-      refreshCache(k, valueLoader, result);
-      return (T) fromStoreValue(result);
+    // 先获取缓存，如果有直接返回，value和剩余时间一次往返取回
+    RedisValue v = redisClient.getWithTtl(k.getKey());
+    if (v.exists()) {
+      refreshCache(k, valueLoader, v);
+      return new RedisValue(fromStoreValue(v.getValue()), v.getTtlMs());
     }
     // 执行缓存方法
-    return execCacheMethod(k, valueLoader);
+    return loadedValue(execCacheMethod(k, valueLoader));
+  }
+
+  /**
+   * {@link #getWithTtl(String, Callable)} 的异步版本
+   *
+   * @param key 缓存key
+   * @param valueLoader 数据加载器
+   * @return {@link RedisValue}
+   */
+  CompletableFuture<RedisValue> getWithTtlAsync(String key, Callable<?> valueLoader) {
+    if (isStats()) {
+      getCacheStats().addRequestCount(1);
+    }
+
+    RedisCacheKey k = getRedisCacheKey(key);
+    log.debug("redis缓存异步查询 key= {}", k.getKey());
+    return redisClient
+        .getWithTtlAsync(k.getKey())
+        .thenCompose(
+            v -> {
+              boolean refresh = v.exists() && needRefresh(v);
+              RedisValue hit = new RedisValue(fromStoreValue(v.getValue()), v.getTtlMs());
+              if (v.exists() && !refresh) {
+                return CompletableFuture.completedFuture(hit);
+              }
+
+              // 刷新和执行缓存方法都可能阻塞，不能占用Lettuce的I/O线程
+              return CompletableFuture.supplyAsync(
+                  () -> {
+                    if (!v.exists()) {
+                      return loadedValue(execCacheMethod(k, valueLoader));
+                    }
+
+                    doRefresh(k, valueLoader, v.getTtlMs());
+                    return hit;
+                  },
+                  ThreadPool.asyncExecutor());
+            });
+  }
+
+  /**
+   * 刚写入L2的值，剩余生存时间按写入时设置的有效时间计算
+   *
+   * @param value 用户值
+   * @return {@link RedisValue}
+   */
+  private RedisValue loadedValue(Object value) {
+    return new RedisValue(value, TimeUnit.SECONDS.toMillis(expireSecsOf(toStoreValue(value))));
   }
 
   @Override
@@ -127,6 +261,89 @@ public class RedisCache extends AbstractCache {
     putValue(k, value);
   }
 
+  @Override
+  public <T> Map<String, T> getAll(
+      Collection<String> keys, Function<Set<String>, Map<String, T>> batchLoader) {
+    if (isStats()) {
+      getCacheStats().addRequestCount(keys.size());
+    }
+
+    List<String> keyList = new ArrayList<>(keys);
+    List<String> redisKeys = new ArrayList<>(keyList.size());
+    for (String key : keyList) {
+      redisKeys.add(getRedisCacheKey(key).getKey());
+    }
+    log.debug("redis缓存批量查询 keys= {}", redisKeys);
+
+    // 一次MGET取回所有key
+    List<Object> values = redisClient.mget(redisKeys);
+    Map<String, T> result = new HashMap<>(keyList.size());
+    Set<String> misses = new LinkedHashSet<>();
+    for (int i = 0; i < keyList.size(); i++) {
+      Object value = values.get(i);
+      if (value == null) {
+        misses.add(keyList.get(i));
+      } else {
+        addUserValue(result, keyList.get(i), value);
+      }
+    }
+
+    if (!misses.isEmpty()) {
+      Map<String, Object> loaded = loadAll(misses, batchLoader);
+      putStoreValues(loaded);
+      loaded.forEach((k, v) -> addUserValue(result, k, v));
+    }
+    return result;
+  }
+
+  /**
+   * 和 {@link #getAll} 相同，同时返回每个key的剩余生存时间，L2Cache据此限制回填L1的有效时间
+   *
+   * @param keys 缓存key
+   * @param batchLoader 批量数据加载器
+   * @return value是用户值，ttlMs是剩余生存时间(毫秒)，执行了批量加载的key是写入时设置的有效时间
+   */
+  <T> Map<String, RedisValue> getAllWithTtl(
+      Collection<String> keys, Function<Set<String>, Map<String, T>> batchLoader) {
+    if (isStats()) {
+      getCacheStats().addRequestCount(keys.size());
+    }
+
+    List<String> keyList = new ArrayList<>(keys);
+    List<String> redisKeys = new ArrayList<>(keyList.size());
+    for (String key : keyList) {
+      redisKeys.add(getRedisCacheKey(key).getKey());
+    }
+    log.debug("redis缓存批量查询 keys= {}", redisKeys);
+
+    // MGET和PTTL一次往返取回
+    List<RedisValue> values = redisClient.mgetWithTtl(redisKeys);
+    Map<String, RedisValue> result = new HashMap<>(keyList.size());
+    Set<String> misses = new LinkedHashSet<>();
+    for (int i = 0; i < keyList.size(); i++) {
+      RedisValue v = values.get(i);
+      if (v.getValue() == null) {
+        misses.add(keyList.get(i));
+      } else {
+        result.put(keyList.get(i), new RedisValue(fromStoreValue(v.getValue()), v.getTtlMs()));
+      }
+    }
+
+    if (!misses.isEmpty()) {
+      Map<String, Object> loaded = loadAll(misses, batchLoader);
+      putStoreValues(loaded);
+      loaded.forEach((k, v) -> result.put(k, loadedValue(fromStoreValue(v))));
+    }
+    return result;
+  }
+
+  @Override
+  public void putAll(Map<String, ?> values) {
+    Map<String, Object> storeValues = new LinkedHashMap<>(values.size());
+    values.forEach((k, v) -> storeValues.put(k, toStoreValue(v)));
+    putStoreValues(storeValues);
+  }
+
   @Override
   public Object putIfAbsent(String key, Object value) {
     String k = getRedisCacheKey(key).getKey();
@@ -149,15 +366,52 @@ public class RedisCache extends AbstractCache {
 
   @Override
   public void clear() {
-    // 必须开启了使用缓存名称作为前缀，clear才有效
-    if (usePrefix) {
-      log.info("清空redis缓存 ，缓存前缀为{}", getName());
+    clear(deleted -> {});
+  }
 
-      Set<String> keys = redisClient.scan(getName() + "*");
-      if (!CollectionUtils.isEmpty(keys)) {
-        redisClient.delete(keys);
-      }
+  /**
+   * 在后台线程清空缓存
+   *
+   * @param progress 每删除一页后回调，参数是已经删除的key个数
+   * @return 删除的key总数
+   */
+  public CompletableFuture<Long> clearAsync(LongConsumer progress) {
+    return ThreadPool.supplyAsync(() -> clear(progress));
+  }
+
+  /**
+   * 逐页SCAN，每页用UNLINK删除，不在内存中保存全部key，也不会一次删除大量key阻塞redis
+   *
+   * @param progress 每删除一页后回调，参数是已经删除的key个数
+   * @return 删除的key总数
+   */
+  private long clear(LongConsumer progress) {
+    // 必须开启了使用缓存名称作为前缀，clear才有效
+    if (!usePrefix) {
+      return 0;
     }
+    if (generationClear) {
+      // 代数加1后新的读写都落在新前缀下，老的key不再被访问，等过期后自动删除
+      long g = redisClient.incr(GENERATION_KEY_PREFIX + getName());
+      generation.accumulateAndGet(g, Math::max);
+      log.info("清空redis缓存，缓存前缀为{}，代数变为{}", getName(), g);
+      return 0;
+    }
+
+    log.info("清空redis缓存 ，缓存前缀为{}", getName());
+    long[] deleted = {0};
+    redisClient.scan(
+        getName() + "*",
+        CLEAR_PAGE_SIZE,
+        keys -> {
+          if (keys.isEmpty()) {
+            return;
+          }
+          deleted[0] += redisClient.unlink(keys);
+          progress.accept(deleted[0]);
+        });
+    log.info("清空redis缓存完成，缓存前缀为{}，删除{}个key", getName(), deleted[0]);
+    return deleted[0];
   }
 
   /**
@@ -169,15 +423,107 @@ public class RedisCache extends AbstractCache {
   public RedisCacheKey getRedisCacheKey(String key) {
     return new RedisCacheKey(key, redisClient.getKeySerializer())
         .cacheName(getName())
-        .usePrefix(usePrefix);
+        .usePrefix(usePrefix)
+        .generation(getGeneration());
   }
 
-  /** 获取锁的线程等待500ms,如果500ms都没返回，则直接释放锁放下一个请求进来，防止第一个线程异常挂掉 */
+  /**
+   * 缓存的当前代数，第一次调用时从redis读取，之后本地缓存 {@link #GENERATION_TTL_MS} 毫秒
+   *
+   * <p>过期后由一个调用线程重新读取，其他线程继续使用本地的代数，读取失败时也继续使用本地的代数
+   *
+   * @return 代数，没有开启按代数清空或者从来没有清空过时是0
+   */
+  public long getGeneration() {
+    if (!generationClear) {
+      return 0;
+    }
+
+    long g = generation.get();
+    if (g < 0) {
+      return refreshGeneration();
+    }
+
+    long checkedAt = generationCheckedAt.get();
+    long now = System.currentTimeMillis();
+    if (now - checkedAt < GENERATION_TTL_MS || !generationCheckedAt.compareAndSet(checkedAt, now)) {
+      return g;
+    }
+    try {
+      return refreshGeneration();
+    } catch (Exception e) {
+      log.warn("读取缓存{}的代数失败，继续使用代数{}：{}", getName(), g, e.getMessage());
+      return g;
+    }
+  }
+
+  /**
+   * 按L1中的key读取，给L1的主动刷新使用，按代数清空时L1的key带代数前缀，需要去掉
+   *
+   * @param l1Key L1中的key
+   * @return 缓存值及剩余生存时间，老代数的key返回不存在，L1会删除这个key
+   */
+  public RedisValue getByL1Key(String l1Key) {
+    long g = getGeneration();
+    if (g == 0) {
+      return getWithTtl(l1Key);
+    }
+
+    String prefix = RedisCacheKey.generationPrefix(g);
+    return l1Key.startsWith(prefix)
+        ? getWithTtl(l1Key.substring(prefix.length()))
+        : new RedisValue(null, RedisValue.TTL_NOT_EXISTS);
+  }
+
+  /**
+   * 从redis重新读取缓存的代数，收到其他节点的清空消息或者错过了消息时调用
+   *
+   * @return 代数
+   */
+  public long refreshGeneration() {
+    if (!generationClear) {
+      return 0;
+    }
+
+    long g = redisClient.getCounter(GENERATION_KEY_PREFIX + getName());
+    generationCheckedAt.set(System.currentTimeMillis());
+    return generation.accumulateAndGet(g, Math::max);
+  }
+
+  /** 同一个key在本JVM内只放一个线程去回源，其他线程等待并共享它的结果 */
+  @SuppressWarnings("unchecked")
   private <T> T execCacheMethod(RedisCacheKey redisCacheKey, Callable<T> valueLoader) {
+    String ck = redisCacheKey.getKey();
+    CompletableFuture<Object> flight = new CompletableFuture<>();
+    CompletableFuture<Object> existing = inFlight.putIfAbsent(ck, flight);
+    if (existing != null) {
+      log.debug("redis缓存 key= {} 已有线程在回源，等待其结果", ck);
+      return (T) join(existing);
+    }
+
+    try {
+      T t = lockAndLoad(redisCacheKey, valueLoader);
+      flight.complete(t);
+      return t;
+    } catch (Throwable e) {
+      // Error和被偷偷抛出的受检异常也要通知等待的线程，否则它们永远等不到结果
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(ck, flight);
+    }
+  }
+
+  /** 获取锁的线程等待500ms,如果500ms都没返回，则直接释放锁放下一个请求进来，防止第一个线程异常挂掉 */
+  @SuppressWarnings("unchecked")
+  private <T> T lockAndLoad(RedisCacheKey redisCacheKey, Callable<T> valueLoader) {
     String ck = redisCacheKey.getKey();
     val lock = new RedisLock(redisClient, ck + "_sync_lock", 10);
 
     while (true) {
+      // 先登记等待信号再查缓存，避免在查缓存和等待之间错过加载完成的通知
+      CompletableFuture<Void> signal =
+          loadedSignals.computeIfAbsent(ck, k -> new CompletableFuture<>());
       try {
         // 先取缓存，如果有直接返回，没有再去做拿锁操作
         Object result = redisClient.get(ck);
@@ -189,23 +535,93 @@ public class RedisCache extends AbstractCache {
         // 获取分布式锁去后台查询数据
         if (lock.tryLock()) {
           T t = loadAndPutValue(redisCacheKey, valueLoader);
-          log.debug("redis缓存 key= {} 获取数据完毕，唤醒等待线程", ck);
-          // 唤醒线程
-          container.signalAll(ck);
+          if (hasWaiters(ck)) {
+            log.debug("redis缓存 key= {} 获取数据完毕，通知等待的节点", ck);
+            publishLoaded(redisCacheKey);
+          }
           return t;
         }
-        // 线程等待
-        log.debug("redis缓存 key= {} 未获得到锁，等待{}毫秒", ck, WAIT_TIME_MS);
-        container.await(ck, WAIT_TIME_MS);
+        // 登记等待标记后再查一次缓存，持有锁的节点在写入缓存之后才检查标记，不会两边都错过
+        redisClient.set(ck + WAITERS_SUFFIX, 1, WAITERS_EXPIRE_SECS, TimeUnit.SECONDS);
+        result = redisClient.get(ck);
+        if (result != null) {
+          return (T) fromStoreValue(result);
+        }
+        // 线程等待，其他节点加载完成会发布通知提前唤醒
+        log.debug("redis缓存 key= {} 未获得到锁，最多等待{}毫秒", ck, WAIT_TIME_MS);
+        signal.get(WAIT_TIME_MS, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        log.debug("redis缓存 key= {} 等待加载完成通知超时，重新查询缓存", ck);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new LoaderCacheValueException(ck, e);
+      } catch (LoaderCacheValueException e) {
+        throw e;
       } catch (Exception e) {
-        container.signalAll(ck);
         throw new LoaderCacheValueException(ck, e);
       } finally {
+        loadedSignals.remove(ck, signal);
         lock.unlock();
       }
     }
   }
 
+  /**
+   * 收到其他节点缓存加载完成的通知，唤醒本节点等待该key的线程
+   *
+   * @param key 缓存key
+   */
+  public void notifyLoaded(String key) {
+    CompletableFuture<Void> signal = loadedSignals.remove(getRedisCacheKey(key).getKey());
+    if (signal != null) {
+      signal.complete(null);
+    }
+  }
+
+  /**
+   * 取走等待标记，加载期间有其他节点在等锁时才需要发布加载完成的消息
+   *
+   * @param ck redis中的缓存key
+   * @return 是否有等待的节点，检查失败时按有处理
+   */
+  private boolean hasWaiters(String ck) {
+    try {
+      Long deleted = redisClient.delete(ck + WAITERS_SUFFIX);
+      return deleted != null && deleted > 0;
+    } catch (Exception e) {
+      log.warn("redis缓存 key= {} 检查等待标记失败：{}", ck, e.getMessage());
+      return true;
+    }
+  }
+
+  /** 发布缓存加载完成的消息，发布失败不影响本次加载结果 */
+  private void publishLoaded(RedisCacheKey redisCacheKey) {
+    try {
+      RedisPubSubMessage message = new RedisPubSubMessage();
+      message.setCacheName(getName());
+      message.setKey(String.valueOf(redisCacheKey.getKeyElement()));
+      message.setMessageType(RedisPubSubMessageType.LOADED);
+      RedisPublisher.publisher(redisClient, message);
+    } catch (Exception e) {
+      log.warn("redis缓存 key= {} 发布加载完成消息失败：{}", redisCacheKey.getKey(), e.getMessage());
+    }
+  }
+
+  /** 等待其他线程的回源结果，回源异常原样抛出 */
+  private static Object join(CompletableFuture<Object> flight) {
+    try {
+      return flight.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    }
+  }
+
   /** 加载并将数据放到redis缓存 */
   private <T> T loadAndPutValue(RedisCacheKey key, Callable<T> valueLoader) {
     long start = System.currentTimeMillis();
@@ -225,6 +641,8 @@ public class RedisCache extends AbstractCache {
       if (cacheStats != null) {
         cacheStats.addCachedRequestTime(cost);
       }
+      // 刷新策略需要回源耗时，不受是否开启统计影响
+      getCacheStats().recordLoadTime(cost);
 
       return (T) fromStoreValue(result);
     } catch (Exception e) {
@@ -241,27 +659,94 @@ public class RedisCache extends AbstractCache {
     }
 
     // 将数据放到缓存
-    redisClient.set(key.getKey(), result, this.expireSecs, TimeUnit.SECONDS);
+    redisClient.set(key.getKey(), result, expireSecsOf(result), TimeUnit.SECONDS);
     return result;
   }
 
-  /** 刷新缓存数据 */
+  /**
+   * 缓存值对应的有效时间，NULL值使用单独配置的有效时间
+   *
+   * @param storeValue 已经转换过的缓存值
+   * @return 有效时间(秒)
+   */
+  private long expireSecsOf(Object storeValue) {
+    // NULL值的有效时间不超过正常数据
+    if (storeValue instanceof NullValue && this.nullExpireSecs > 0) {
+      return this.expireSecs > 0 ? Math.min(this.nullExpireSecs, this.expireSecs) : nullExpireSecs;
+    }
+    return this.expireSecs;
+  }
+
+  /**
+   * 以管道方式将一批缓存值写到redis
+   *
+   * @param storeValues 缓存key和已经转换过的缓存值
+   */
+  private void putStoreValues(Map<String, Object> storeValues) {
+    // 按有效时间分组，NULL值和正常值各一批
+    Map<Long, Map<String, Object>> groups = new HashMap<>(2);
+    storeValues.forEach(
+        (k, v) ->
+            groups
+                .computeIfAbsent(expireSecsOf(v), secs -> new LinkedHashMap<>())
+                .put(getRedisCacheKey(k).getKey(), v));
+    groups.forEach(
+        (secs, redisValues) -> {
+          log.debug("redis缓存批量put keys= {}", redisValues.keySet());
+          redisClient.setAll(redisValues, secs, TimeUnit.SECONDS);
+        });
+  }
+
+  /**
+   * 刷新缓存数据
+   *
+   * @param redisCacheKey {@link RedisCacheKey}
+   * @param valueLoader 数据加载器
+   * @param v 读取到的value及剩余生存时间
+   */
   private <T> void refreshCache(
-      RedisCacheKey redisCacheKey, Callable<T> valueLoader, Object result) {
-    long ttl = redisClient.getExpireSecs(redisCacheKey.getKey());
-
-    if (ttl > 0 && TimeUnit.SECONDS.toMillis(ttl) <= preloadSecs) {
-      // 判断是否需要强制刷新在开启刷新线程
-      if (!isForceRefresh()) {
-        log.debug("redis缓存 key={} 软刷新缓存模式", redisCacheKey.getKey());
-        softRefresh(redisCacheKey);
-      } else {
-        log.debug("redis缓存 key={} 强刷新缓存模式", redisCacheKey.getKey());
-        forceRefresh(redisCacheKey, valueLoader);
-      }
+      RedisCacheKey redisCacheKey, Callable<T> valueLoader, RedisValue v) {
+    if (needRefresh(v)) {
+      doRefresh(redisCacheKey, valueLoader, v.getTtlMs());
     }
   }
 
+  /**
+   * 执行刷新
+   *
+   * @param redisCacheKey {@link RedisCacheKey}
+   * @param valueLoader 数据加载器
+   * @param ttlMs 判断需要刷新时的剩余生存时间(毫秒)
+   */
+  private <T> void doRefresh(RedisCacheKey redisCacheKey, Callable<T> valueLoader, long ttlMs) {
+    // 判断是否需要强制刷新在开启刷新线程
+    if (!isForceRefresh()) {
+      log.debug("redis缓存 key={} 软刷新缓存模式", redisCacheKey.getKey());
+      softRefresh(redisCacheKey);
+    } else {
+      log.debug("redis缓存 key={} 强刷新缓存模式", redisCacheKey.getKey());
+      forceRefresh(redisCacheKey, valueLoader, ttlMs);
+    }
+  }
+
+  /**
+   * 按刷新策略判断本次请求是否需要刷新，NULL值不刷新，让它按较短的有效时间自然过期
+   *
+   * @param v 读取到的value及剩余生存时间
+   * @return true OR false
+   */
+  private boolean needRefresh(RedisValue v) {
+    if (v.getValue() instanceof NullValue) {
+      return false;
+    }
+
+    return refreshPolicy.shouldRefresh(
+        v.getTtlMs(),
+        TimeUnit.SECONDS.toMillis(preloadSecs),
+        getCacheStats().getLoadTimeEwma(),
+        refreshBeta);
+  }
+
   /**
    * 软刷新，直接修改缓存时间
    *
@@ -286,8 +771,9 @@ public class RedisCache extends AbstractCache {
    *
    * @param redisCacheKey {@link RedisCacheKey}
    * @param valueLoader 数据加载器
+   * @param ttlMs 判断需要刷新时的剩余生存时间(毫秒)
    */
-  private <T> void forceRefresh(RedisCacheKey redisCacheKey, Callable<T> valueLoader) {
+  private <T> void forceRefresh(RedisCacheKey redisCacheKey, Callable<T> valueLoader, long ttlMs) {
     // 尽量少的去开启线程，因为线程池是有限的
     ThreadPool.run(
         () -> {
@@ -295,9 +781,9 @@ public class RedisCache extends AbstractCache {
           val lock = new RedisLock(redisClient, redisCacheKey.getKey() + "_lock");
           try {
             if (lock.tryLock()) {
-              // 获取锁之后再判断一下过期时间，看是否需要加载数据
-              long ttl = redisClient.getExpireSecs(redisCacheKey.getKey());
-              if (ttl > 0 && ttl <= preloadSecs) {
+              // 获取锁之后再判断一下过期时间，已经被其他请求刷新过就不再加载数据
+              long ttl = redisClient.getWithTtl(redisCacheKey.getKey()).getTtlMs();
+              if (ttl > 0 && ttl <= ttlMs) {
                 // 加载数据并放到缓存
                 loadAndPutValue(redisCacheKey, valueLoader);
               }
@@ -25,6 +25,9 @@ public class RedisCacheKey {
   /** 是否使用缓存前缀 */
   private boolean usePrefix = true;
 
+  /** 缓存的代数，大于0时拼在缓存前缀里，清空缓存时代数加1，老的key不再被访问，等过期后自动删除 */
+  private long generation;
+
   /** RedisTemplate 的key序列化器 */
   private final RedisSerializer serializer;
 
@@ -39,6 +42,15 @@ public class RedisCacheKey {
     this.serializer = serializer;
   }
 
+  /**
+   * 获取未加前缀的原始缓存key
+   *
+   * @return Object
+   */
+  public Object getKeyElement() {
+    return keyElement;
+  }
+
   /**
    * 获取缓存key
    *
@@ -79,8 +91,21 @@ public class RedisCacheKey {
    * @return byte[]
    */
   public byte[] getPrefix() {
-    return prefixSerializer.serialize(
-        (StringUtils.isEmpty(cacheName) ? cacheName.concat(":") : cacheName.concat(":")));
+    String prefix = StringUtils.isEmpty(cacheName) ? cacheName.concat(":") : cacheName.concat(":");
+    if (generation > 0) {
+      prefix = prefix.concat(generationPrefix(generation));
+    }
+    return prefixSerializer.serialize(prefix);
+  }
+
+  /**
+   * 代数在缓存前缀里的部分，缓存名称之后
+   *
+   * @param generation 代数
+   * @return 例如 "g3:"
+   */
+  public static String generationPrefix(long generation) {
+    return "g" + generation + ":";
   }
 
   /**
@@ -104,4 +129,15 @@ public class RedisCacheKey {
     this.usePrefix = usePrefix;
     return this;
   }
+
+  /**
+   * 设置缓存的代数，0表示前缀里不带代数，只在使用缓存前缀时生效
+   *
+   * @param generation generation
+   * @return RedisCacheKey
+   */
+  public RedisCacheKey generation(long generation) {
+    this.generation = generation;
+    return this;
+  }
 }
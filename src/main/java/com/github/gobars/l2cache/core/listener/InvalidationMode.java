@@ -0,0 +1,41 @@
+package com.github.gobars.l2cache.core.listener;
+
+/**
+ * L1失效通知的方式
+ *
+ * @author bingoohuang
+ */
+public enum InvalidationMode {
+  /**
+   * 每次删除都通过pub/sub频道广播
+   *
+   * <p>默认发布到公共频道 {@link RedisMessageListener#CHANNEL}，所有节点都会收到。
+   * 开启cache-channel后发布到缓存专用的频道 {@link RedisMessageListener#channelOf}，
+   * 只有创建了这个缓存的节点收到，集群里所有节点都升级后再开启。节点总是同时订阅两种频道
+   */
+  PUBSUB("广播"),
+
+  /**
+   * redis 6的客户端缓存(CLIENT TRACKING)，redis只把失效通知推送给读过这个key的节点
+   *
+   * <p>只支持单机模式，集群模式或者redis不支持时退回 {@link #PUBSUB}
+   */
+  TRACKING("客户端缓存追踪"),
+
+  /**
+   * 删除消息追加到redis stream，每个节点记住读到的最后一条消息ID，断线重连后补读期间错过的消息
+   *
+   * <p>只有错过的消息已经被裁剪掉时才清空全部L1，需要redis 5及以上版本，不支持时退回 {@link #PUBSUB}
+   */
+  STREAM("消息流");
+
+  private final String label;
+
+  InvalidationMode(String label) {
+    this.label = label;
+  }
+
+  public String getLabel() {
+    return label;
+  }
+}
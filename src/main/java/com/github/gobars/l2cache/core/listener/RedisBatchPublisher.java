@@ -0,0 +1,137 @@
+package com.github.gobars.l2cache.core.listener;
+
+import com.github.gobars.l2cache.core.redis.client.RedisClient;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并发布L1删除消息，按缓存名称缓冲一个时间窗口内的key，窗口结束或者攒够maxKeys个key时发布一条多key消息
+ *
+ * <p>批量更新时PUBLISH次数和每个节点的监听回调次数从key的个数降到批次数
+ *
+ * @author bingoohuang
+ */
+@Slf4j
+public class RedisBatchPublisher {
+  /** 定时发布线程池 */
+  private final ScheduledThreadPoolExecutor executor =
+      new ScheduledThreadPoolExecutor(
+          1,
+          r -> {
+            Thread thread = new Thread(r, "l2cache-evict-publisher");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final RedisClient redisClient;
+
+  /** 缓冲时间窗口(毫秒)，小于等于0时不缓冲 */
+  private final long windowMs;
+
+  /** 一条消息最多包含的key个数 */
+  private final int maxKeys;
+
+  /** 按缓存名称缓冲的key，只在compute中修改 */
+  private final ConcurrentMap<String, Set<String>> pending = new ConcurrentHashMap<>();
+
+  /**
+   * @param redisClient redis客户端
+   * @param windowMs 缓冲时间窗口(毫秒)，小于等于0时不缓冲
+   * @param maxKeys 一条消息最多包含的key个数
+   */
+  public RedisBatchPublisher(RedisClient redisClient, long windowMs, int maxKeys) {
+    this.redisClient = redisClient;
+    this.windowMs = windowMs;
+    this.maxKeys = Math.max(1, maxKeys);
+  }
+
+  /**
+   * 缓冲一个需要删除的L1 key
+   *
+   * @param cacheName 缓存名称
+   * @param key 缓存key
+   */
+  public void evict(String cacheName, String key) {
+    if (windowMs <= 0 || executor.isShutdown()) {
+      // 不缓冲，或者已经关闭，没有线程发布缓冲的key
+      publish(cacheName, Collections.singletonList(key));
+      return;
+    }
+
+    boolean[] firstAndFull = new boolean[2];
+    pending.compute(
+        cacheName,
+        (name, keys) -> {
+          if (keys == null) {
+            keys = new LinkedHashSet<>();
+            firstAndFull[0] = true;
+          }
+          keys.add(key);
+          firstAndFull[1] = keys.size() >= maxKeys;
+          return keys;
+        });
+
+    if (firstAndFull[1]) {
+      flush(cacheName);
+    } else if (firstAndFull[0]) {
+      try {
+        executor.schedule(() -> flush(cacheName), windowMs, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // 检查之后被关闭了，立即发布
+        flush(cacheName);
+      }
+    }
+  }
+
+  /**
+   * 批量缓冲需要删除的L1 key
+   *
+   * @param cacheName 缓存名称
+   * @param keys 缓存key
+   */
+  public void evictAll(String cacheName, Collection<String> keys) {
+    keys.forEach(key -> evict(cacheName, key));
+  }
+
+  /** 立即发布所有缓冲的key，并关闭线程池 */
+  public void shutdown() {
+    executor.shutdown();
+    new ArrayList<>(pending.keySet()).forEach(this::flush);
+  }
+
+  private void flush(String cacheName) {
+    Set<String> keys = pending.remove(cacheName);
+    if (keys == null || keys.isEmpty()) {
+      return;
+    }
+
+    try {
+      publish(cacheName, keys);
+    } catch (Exception e) {
+      log.error(
+          "l2cache 发布L1删除消息异常，缓存名称={}，key个数={}：{}", cacheName, keys.size(), e.getMessage(), e);
+    }
+  }
+
+  private void publish(String cacheName, Collection<String> keys) {
+    RedisPubSubMessage message = new RedisPubSubMessage();
+    message.setCacheName(cacheName);
+    if (keys.size() == 1) {
+      message.setKey(keys.iterator().next());
+    } else {
+      message.setKeys(new ArrayList<>(keys));
+    }
+    message.setMessageType(RedisPubSubMessageType.EVICT);
+    RedisPublisher.publisher(redisClient, message);
+  }
+}
@@ -1,15 +1,19 @@
 package com.github.gobars.l2cache.core.listener;
 
-import com.alibaba.fastjson.JSON;
 import com.github.gobars.l2cache.core.cache.Cache;
 import com.github.gobars.l2cache.core.cache.L2Cache;
+import com.github.gobars.l2cache.core.cache.RedisCache;
 import com.github.gobars.l2cache.core.manager.CacheManager;
+import com.github.gobars.l2cache.core.support.StripedExecutor;
 import io.lettuce.core.pubsub.RedisPubSubListener;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * redis消息的订阅者
@@ -17,44 +21,173 @@ import java.util.Collection;
  * @author yuhao.wang
  */
 @Slf4j
-public class RedisMessageListener implements RedisPubSubListener<String, String> {
+public class RedisMessageListener implements RedisPubSubListener<byte[], byte[]> {
   public static final String CHANNEL = "l2cache-channel";
 
+  /**
+   * 缓存专用的频道，节点只订阅自己已经创建的缓存的频道
+   *
+   * @param cacheName 缓存名称
+   * @return 频道名称
+   */
+  public static String channelOf(String cacheName) {
+    return CHANNEL + ":" + cacheName;
+  }
+
   /** 缓存管理器 */
   @Setter private CacheManager cacheManager;
 
+  /** 缓存名称ID到本地缓存名称的反查表，缓存管理器创建和删除缓存时维护 */
+  private final Map<Long, String> cacheNameIndex = new ConcurrentHashMap<>();
+
+  /** 处理消息的线程池，没有启动时在Lettuce的I/O线程上处理 */
+  private StripedExecutor executor;
+
+  /**
+   * 启动处理消息的线程池，同一个缓存的消息在同一个线程上按顺序处理
+   *
+   * @param threads 线程数
+   * @param queueCapacity 每个线程的队列长度
+   */
+  public void start(int threads, int queueCapacity) {
+    executor = new StripedExecutor("l2cache-listener", threads, queueCapacity, this::overflow);
+  }
+
+  /**
+   * 创建缓存时登记缓存名称，在订阅缓存的频道之前调用，收到的消息都能找到缓存
+   *
+   * @param cacheName 缓存名称
+   */
+  public void addCacheName(String cacheName) {
+    cacheNameIndex.put(RedisPubSubCodec.cacheNameId(cacheName), cacheName);
+  }
+
+  /**
+   * 删除缓存时注销缓存名称
+   *
+   * @param cacheName 缓存名称
+   */
+  public void removeCacheName(String cacheName) {
+    cacheNameIndex.remove(RedisPubSubCodec.cacheNameId(cacheName), cacheName);
+  }
+
+  /** 停止处理消息的线程池 */
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
   @Override
-  public void message(String channel, String message) {
+  public void message(byte[] channel, byte[] message) {
+    if (executor == null) {
+      apply(message);
+      return;
+    }
+
+    // 不阻塞I/O线程，队列满时丢弃，稍后由overflow补救
+    executor.execute(RedisPubSubCodec.stripeKey(message), () -> apply(message));
+  }
+
+  /**
+   * 排队中的消息数
+   *
+   * @return 消息数
+   */
+  public int queueSize() {
+    return executor == null ? 0 : executor.queueSize();
+  }
+
+  /**
+   * 队列满时丢弃的消息数
+   *
+   * @return 消息数
+   */
+  public long getRejectedCount() {
+    return executor == null ? 0 : executor.getRejectedCount();
+  }
+
+  /**
+   * 上次调用以来消息从收到到开始处理的最长等待时间
+   *
+   * @return 等待时间(毫秒)
+   */
+  public long getAndResetMaxLagMs() {
+    return executor == null ? 0 : executor.getAndResetMaxLagMs();
+  }
+
+  /** 丢弃了消息的缓存不知道错过了哪些key，清空它的L1 */
+  private void overflow(String stripeKey) {
+    if (stripeKey.isEmpty()) {
+      log.warn("l2cache 删除消息队列已满，丢弃了不能识别缓存名称的消息，清除全部L1数据");
+      clearAll();
+      return;
+    }
+
+    String cacheName = cacheName(Long.parseLong(stripeKey));
+    if (cacheName == null) {
+      return;
+    }
+
+    log.warn("l2cache 删除消息队列已满，丢弃了缓存{}的消息，清除它的L1数据", cacheName);
+    for (Cache cache : cacheManager.getCache(cacheName)) {
+      if (cache instanceof L2Cache) {
+        ((L2Cache) cache).clearL1();
+      }
+    }
+  }
+
+  /**
+   * 处理一条消息，pub/sub和stream收到的消息格式相同
+   *
+   * @param message 消息内容
+   */
+  public void apply(byte[] message) {
     try {
-      log.debug("redis消息订阅者接收到频道【{}】发布的消息。消息内容：{}", channel, message);
-      val redisPubSubMessage = JSON.parseObject(message, RedisPubSubMessage.class);
+      val redisPubSubMessage = RedisPubSubCodec.decode(message, this::cacheName);
+      if (redisPubSubMessage == null) {
+        // 本地没有这个缓存
+        return;
+      }
+      log.debug("redis消息订阅者接收到消息。消息内容：{}", redisPubSubMessage);
       // 根据缓存名称获取多级缓存，可能有多个
       Collection<Cache> caches = cacheManager.getCache(redisPubSubMessage.getCacheName());
+      if (caches.size() == 1 && isOwnInvalidation(redisPubSubMessage)) {
+        // 本节点发布删除消息前已经删除了自己的L1，同名的缓存有多个实例时只删除了发布的那个，其他实例还要删除
+        return;
+      }
       for (Cache cache : caches) {
         // 判断缓存是否是多级缓存
         if (cache instanceof L2Cache) {
           switch (redisPubSubMessage.getMessageType()) {
             case EVICT:
+              // 一条消息可能包含多个key，一次处理完
+              List<String> keys = redisPubSubMessage.allKeys();
               if (RedisPubSubMessage.SOURCE.equals(redisPubSubMessage.getSource())) {
-                ((L2Cache) cache).getCache2().evict(redisPubSubMessage.getKey());
+                keys.forEach(((L2Cache) cache).getCache2()::evict);
               }
               // 获取L1，并删除L1数据
-              ((L2Cache) cache).getCache1().evict(redisPubSubMessage.getKey());
-              log.info(
-                  "删除L1{}数据,key={}",
-                  redisPubSubMessage.getCacheName(),
-                  redisPubSubMessage.getKey());
+              keys.forEach(((L2Cache) cache)::evictL1);
+              log.info("删除L1{}数据,key={}", redisPubSubMessage.getCacheName(), keys);
               break;
 
             case CLEAR:
               if (RedisPubSubMessage.SOURCE.equals(redisPubSubMessage.getSource())) {
-                ((L2Cache) cache).getCache2().clear();
+                clearL2InBackground((L2Cache) cache);
+                break;
               }
               // 获取L1，并删除L1数据
-              ((L2Cache) cache).getCache1().clear();
+              ((L2Cache) cache).invalidateL1();
               log.info("清除L1{}数据", redisPubSubMessage.getCacheName());
               break;
 
+            case LOADED:
+              Cache cache2 = ((L2Cache) cache).getCache2();
+              if (cache2 instanceof RedisCache) {
+                ((RedisCache) cache2).notifyLoaded(redisPubSubMessage.getKey());
+              }
+              break;
+
             default:
               log.error("接收到没有定义的订阅消息频道数据");
               break;
@@ -67,18 +200,61 @@ public class RedisMessageListener implements RedisPubSubListener<String, String>
     }
   }
 
+  /** 管理后台清空缓存，L2的key可能很多，在后台逐页删除，不占用处理消息的线程，删除完L2再清除L1 */
+  private static void clearL2InBackground(L2Cache cache) {
+    Cache cache2 = cache.getCache2();
+    if (!(cache2 instanceof RedisCache)) {
+      cache2.clear();
+      cache.clearL1();
+      return;
+    }
+
+    ((RedisCache) cache2)
+        .clearAsync(deleted -> log.debug("清空redis缓存{}，已删除{}个key", cache.getName(), deleted))
+        .whenComplete(
+            (deleted, e) -> {
+              if (e != null) {
+                log.error("l2cache 清空redis缓存{}异常：{}", cache.getName(), e.getMessage(), e);
+              }
+              cache.invalidateL1();
+              log.info("清除L1{}数据", cache.getName());
+            });
+  }
+
+  /** 清除全部L1，错过了部分删除消息时使用 */
+  public void clearAll() {
+    for (String cacheName : cacheManager.getCacheNames()) {
+      for (Cache cache : cacheManager.getCache(cacheName)) {
+        if (cache instanceof L2Cache) {
+          ((L2Cache) cache).clearL1();
+        }
+      }
+    }
+  }
+
+  /** 本节点发布的删除消息，LOADED消息还需要唤醒本节点其他缓存实例上等待的线程 */
+  private static boolean isOwnInvalidation(RedisPubSubMessage message) {
+    return Long.valueOf(RedisPublisher.NODE_ID).equals(message.getOrigin())
+        && message.getMessageType() != RedisPubSubMessageType.LOADED;
+  }
+
+  /** 共用频道上会收到本节点没有的缓存的消息，找不到时返回NULL，不处理 */
+  private String cacheName(long cacheNameId) {
+    return cacheNameIndex.get(cacheNameId);
+  }
+
   @Override
-  public void message(String pattern, String channel, String message) {}
+  public void message(byte[] pattern, byte[] channel, byte[] message) {}
 
   @Override
-  public void subscribed(String channel, long count) {}
+  public void subscribed(byte[] channel, long count) {}
 
   @Override
-  public void psubscribed(String pattern, long count) {}
+  public void psubscribed(byte[] pattern, long count) {}
 
   @Override
-  public void unsubscribed(String channel, long count) {}
+  public void unsubscribed(byte[] channel, long count) {}
 
   @Override
-  public void punsubscribed(String pattern, long count) {}
+  public void punsubscribed(byte[] pattern, long count) {}
 }
@@ -0,0 +1,240 @@
+package com.github.gobars.l2cache.core.listener;
+
+import com.alibaba.fastjson.JSON;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * pub/sub消息的二进制编码，订阅端不需要解析JSON
+ *
+ * <pre>
+ * MAGIC(1) VERSION(1) TYPE(1) FLAGS(1) ORIGIN(8) CACHE_NAME_ID(8)
+ * KEY_COUNT(varint) [KEY_LEN(varint) KEY]...
+ * </pre>
+ *
+ * <p>ORIGIN是发布消息的节点ID，0表示没有，版本1的消息没有ORIGIN。
+ *
+ * <p>缓存名称只发送64位哈希值，订阅端用本地已有的缓存名称反查，本地没有这个缓存时消息直接忽略。
+ * 第一个字节不是MAGIC时按JSON解析，兼容滚动升级期间老节点发布的消息。
+ *
+ * @author bingoohuang
+ */
+public final class RedisPubSubCodec {
+  /** 二进制消息的第一个字节，JSON消息以'{'开头，不会冲突 */
+  static final byte MAGIC = (byte) 0xC2;
+
+  static final byte VERSION = 2;
+
+  /** FLAGS：消息来自管理后台 */
+  private static final int FLAG_SOURCE = 1;
+
+  private static final RedisPubSubMessageType[] TYPES = RedisPubSubMessageType.values();
+
+  /** JSON消息中缓存名称的开头 */
+  private static final byte[] JSON_CACHE_NAME = "\"cacheName\":\"".getBytes(StandardCharsets.UTF_8);
+
+  private RedisPubSubCodec() {}
+
+  /**
+   * 编码成二进制消息，source不是管理后台时无法用二进制表示，退回JSON
+   *
+   * @param message 消息
+   * @return 消息字节
+   */
+  public static byte[] encode(RedisPubSubMessage message) {
+    String source = message.getSource();
+    if (source != null && !RedisPubSubMessage.SOURCE.equals(source)) {
+      return encodeJson(message);
+    }
+
+    List<String> keys = message.allKeys();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(16 + keys.size() * 16);
+    out.write(MAGIC);
+    out.write(VERSION);
+    out.write(message.getMessageType().ordinal());
+    out.write(source == null ? 0 : FLAG_SOURCE);
+    writeLong(out, message.getOrigin() == null ? 0 : message.getOrigin());
+    writeLong(out, cacheNameId(message.getCacheName()));
+    writeVarInt(out, keys.size());
+    for (String key : keys) {
+      byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+      writeVarInt(out, bytes.length);
+      out.write(bytes, 0, bytes.length);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * 编码成JSON消息，老版本节点只能读这种格式
+   *
+   * @param message 消息
+   * @return 消息字节
+   */
+  public static byte[] encodeJson(RedisPubSubMessage message) {
+    return JSON.toJSONString(message).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * 解码消息
+   *
+   * @param bytes 消息字节
+   * @param cacheNames 根据缓存名称ID查找本地缓存名称，找不到时返回null
+   * @return 消息，二进制消息里的缓存在本地不存在时返回null
+   */
+  public static RedisPubSubMessage decode(byte[] bytes, LongFunction<String> cacheNames) {
+    if (bytes.length == 0 || bytes[0] != MAGIC) {
+      return JSON.parseObject(new String(bytes, StandardCharsets.UTF_8), RedisPubSubMessage.class);
+    }
+    byte version = bytes[1];
+    if (version != 1 && version != VERSION) {
+      throw new IllegalArgumentException("不支持的pub/sub消息版本：" + version);
+    }
+
+    int[] pos = {2};
+    RedisPubSubMessageType type = TYPES[bytes[pos[0]++]];
+    int flags = bytes[pos[0]++];
+    long origin = version == 1 ? 0 : readLong(bytes, pos);
+    long nameId = readLong(bytes, pos);
+    String cacheName = cacheNames.apply(nameId);
+    if (cacheName == null) {
+      return null;
+    }
+
+    int count = readVarInt(bytes, pos);
+    List<String> keys = count == 0 ? Collections.emptyList() : new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int len = readVarInt(bytes, pos);
+      keys.add(new String(bytes, pos[0], len, StandardCharsets.UTF_8));
+      pos[0] += len;
+    }
+
+    RedisPubSubMessage message = new RedisPubSubMessage();
+    message.setMessageType(type);
+    message.setCacheName(cacheName);
+    if (origin != 0) {
+      message.setOrigin(origin);
+    }
+    if ((flags & FLAG_SOURCE) != 0) {
+      message.setSource(RedisPubSubMessage.SOURCE);
+    }
+    if (keys.size() == 1) {
+      message.setKey(keys.get(0));
+    } else if (keys.size() > 1) {
+      message.setKeys(keys);
+    }
+    return message;
+  }
+
+  /**
+   * 不解码整条消息，只读出缓存名称ID，用来把同一个缓存的消息分到同一个线程
+   *
+   * <p>JSON消息只截取缓存名称计算ID，和二进制消息分到同一个线程
+   *
+   * @param bytes 消息字节
+   * @return 缓存名称ID的字符串，不完整的消息或者截取不到缓存名称时返回空字符串
+   */
+  public static String stripeKey(byte[] bytes) {
+    if (bytes.length > 0 && bytes[0] != MAGIC) {
+      String cacheName = jsonCacheName(bytes);
+      return cacheName == null ? "" : Long.toString(cacheNameId(cacheName));
+    }
+
+    int offset = bytes.length > 1 && bytes[1] == 1 ? 4 : 12;
+    if (bytes.length < offset + 8 || bytes[0] != MAGIC) {
+      return "";
+    }
+
+    int[] pos = {offset};
+    return Long.toString(readLong(bytes, pos));
+  }
+
+  /**
+   * 从JSON消息中截取缓存名称，不解析整条消息
+   *
+   * @param bytes JSON消息字节
+   * @return 缓存名称，没有找到或者包含转义字符时返回NULL
+   */
+  private static String jsonCacheName(byte[] bytes) {
+    int start = indexOf(bytes, JSON_CACHE_NAME);
+    if (start < 0) {
+      return null;
+    }
+
+    start += JSON_CACHE_NAME.length;
+    for (int i = start; i < bytes.length; i++) {
+      if (bytes[i] == '\\') {
+        return null;
+      }
+      if (bytes[i] == '"') {
+        return new String(bytes, start, i - start, StandardCharsets.UTF_8);
+      }
+    }
+    return null;
+  }
+
+  private static int indexOf(byte[] bytes, byte[] target) {
+    for (int i = 0; i <= bytes.length - target.length; i++) {
+      int j = 0;
+      while (j < target.length && bytes[i + j] == target[j]) {
+        j++;
+      }
+      if (j == target.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * 缓存名称ID，FNV-1a 64位哈希，不同节点计算结果一致
+   *
+   * @param cacheName 缓存名称
+   * @return 缓存名称ID
+   */
+  public static long cacheNameId(String cacheName) {
+    long h = 0xCBF29CE484222325L;
+    for (byte b : cacheName.getBytes(StandardCharsets.UTF_8)) {
+      h ^= b & 0xFF;
+      h *= 0x100000001B3L;
+    }
+    return h;
+  }
+
+  private static void writeLong(ByteArrayOutputStream out, long value) {
+    for (int i = 56; i >= 0; i -= 8) {
+      out.write((int) (value >>> i));
+    }
+  }
+
+  private static long readLong(byte[] bytes, int[] pos) {
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      value = (value << 8) | (bytes[pos[0]++] & 0xFF);
+    }
+    return value;
+  }
+
+  private static void writeVarInt(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int readVarInt(byte[] bytes, int[] pos) {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = bytes[pos[0]++];
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+}
@@ -3,6 +3,8 @@ package com.github.gobars.l2cache.core.listener;
 import lombok.Data;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * redis pub/sub 消息
@@ -19,9 +21,27 @@ public class RedisPubSubMessage implements Serializable {
   /** 缓存key */
   private String key;
 
+  /** 合并发布的多个缓存key，和key不会同时出现 */
+  private List<String> keys;
+
   /** 消息类型 */
   private RedisPubSubMessageType messageType;
 
+  /** 发布消息的节点ID，节点收到自己发布的删除消息时直接忽略 */
+  private Long origin;
+
   /** 消息来源 */
   private String source;
+
+  /**
+   * 消息中所有的缓存key
+   *
+   * @return keys不为空时返回keys，否则返回只包含key的列表
+   */
+  public List<String> allKeys() {
+    if (keys != null && !keys.isEmpty()) {
+      return keys;
+    }
+    return key == null ? Collections.emptyList() : Collections.singletonList(key);
+  }
 }
@@ -10,7 +10,10 @@ public enum RedisPubSubMessageType {
   EVICT("删除缓存"),
 
   /** 清空缓存 */
-  CLEAR("清空缓存");
+  CLEAR("清空缓存"),
+
+  /** 缓存加载完成，唤醒其他节点等待分布式锁的线程 */
+  LOADED("缓存加载完成");
 
   private final String label;
 
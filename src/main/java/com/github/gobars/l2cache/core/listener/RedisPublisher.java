@@ -1,9 +1,10 @@
 package com.github.gobars.l2cache.core.listener;
 
-import com.alibaba.fastjson.JSON;
 import com.github.gobars.l2cache.core.redis.client.RedisClient;
 import lombok.extern.slf4j.Slf4j;
 
+import java.security.SecureRandom;
+
 /**
  * redis消息的发布者
  *
@@ -11,6 +12,45 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class RedisPublisher {
+  /** 当前节点ID，每次启动随机生成 */
+  public static final long NODE_ID = nodeId();
+
+  /** 是否发布二进制消息，默认关闭，集群里所有节点都能解析二进制消息后再打开 */
+  private static volatile boolean binaryMessage = false;
+
+  /** 删除消息追加到 {@link RedisStreamListener#STREAM} 时的stream最大长度，0表示通过频道广播 */
+  private static volatile long streamMaxLen = 0;
+
+  /** 是否发布到缓存专用的频道，默认关闭，集群里所有节点都订阅了缓存专用频道后再打开 */
+  private static volatile boolean cacheChannel = false;
+
+  /**
+   * 设置是否发布到缓存专用的频道
+   *
+   * @param cacheChannel 为false时发布到公共频道 {@link RedisMessageListener#CHANNEL}
+   */
+  public static void setCacheChannel(boolean cacheChannel) {
+    RedisPublisher.cacheChannel = cacheChannel;
+  }
+
+  /**
+   * 设置删除消息追加到stream
+   *
+   * @param streamMaxLen stream最大长度，0表示通过频道广播
+   */
+  public static void setStreamMaxLen(long streamMaxLen) {
+    RedisPublisher.streamMaxLen = streamMaxLen;
+  }
+
+  /**
+   * 设置是否发布二进制消息
+   *
+   * @param binaryMessage 为false时发布JSON消息
+   */
+  public static void setBinaryMessage(boolean binaryMessage) {
+    RedisPublisher.binaryMessage = binaryMessage;
+  }
+
   /**
    * 发布消息到频道（Channel）
    *
@@ -18,7 +58,32 @@ public class RedisPublisher {
    * @param message 消息内容
    */
   public static void publisher(RedisClient redisClient, RedisPubSubMessage message) {
-    redisClient.publish(RedisMessageListener.CHANNEL, JSON.toJSONString(message));
-    log.debug("redis消息发布者向频道【{}】发布了【{}】消息", RedisMessageListener.CHANNEL, message.toString());
+    if (message.getSource() == null && message.getOrigin() == null) {
+      message.setOrigin(NODE_ID);
+    }
+    byte[] bytes =
+        binaryMessage ? RedisPubSubCodec.encode(message) : RedisPubSubCodec.encodeJson(message);
+    if (streamMaxLen > 0
+        && message.getSource() == null
+        && message.getMessageType() != RedisPubSubMessageType.LOADED) {
+      // 删除消息需要可靠送达，LOADED消息丢了只是多等一会
+      redisClient.xadd(RedisStreamListener.STREAM, bytes, streamMaxLen);
+      log.debug("redis消息发布者向stream【{}】追加了【{}】消息", RedisStreamListener.STREAM, message);
+      return;
+    }
+    String channel =
+        cacheChannel
+            ? RedisMessageListener.channelOf(message.getCacheName())
+            : RedisMessageListener.CHANNEL;
+    redisClient.publish(channel, bytes);
+    log.debug("redis消息发布者向频道【{}】发布了【{}】消息", channel, message.toString());
+  }
+
+  private static long nodeId() {
+    long id;
+    do {
+      id = new SecureRandom().nextLong();
+    } while (id == 0);
+    return id;
   }
 }
@@ -0,0 +1,154 @@
+package com.github.gobars.l2cache.core.listener;
+
+import com.github.gobars.l2cache.core.redis.client.RedisClient;
+import com.github.gobars.l2cache.core.redis.client.StreamEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 从redis stream读取删除消息，记住读到的最后一条消息ID，断线重连后从这个ID继续读，不会错过消息
+ *
+ * <p>落后太多，没读到的消息已经被裁剪掉时，无法知道错过了哪些key，只能清空全部L1。
+ * 每批消息应用之前都检查一次，断线重连后下次读取之前也检查一次
+ *
+ * @author bingoohuang
+ */
+@Slf4j
+public class RedisStreamListener implements Runnable {
+  /** 删除消息的stream key */
+  public static final String STREAM = "l2cache-stream";
+
+  /** 每次最多读取的消息条数 */
+  private static final int BATCH = 500;
+
+  /** 没有消息时阻塞等待的时间(毫秒) */
+  private static final long BLOCK_MS = 1000;
+
+  /** 读取异常后重试的间隔(毫秒) */
+  private static final long RETRY_MS = 1000;
+
+  private final RedisClient redisClient;
+
+  /** 和pub/sub消息共用的处理逻辑 */
+  private final RedisMessageListener messageListener;
+
+  /** 读到的最后一条消息ID */
+  private volatile String lastId;
+
+  private volatile boolean running;
+
+  /** 刚重连或者读取异常后，可能落后于stream的裁剪位置，下次读取之前检查 */
+  private volatile boolean behind;
+
+  private Thread thread;
+
+  public RedisStreamListener(RedisClient redisClient, RedisMessageListener messageListener) {
+    this.redisClient = redisClient;
+    this.messageListener = messageListener;
+  }
+
+  /**
+   * 从stream当前的末尾开始读取
+   *
+   * @return 是否启动成功，redis不支持stream时返回false
+   */
+  public synchronized boolean start() {
+    try {
+      String id = redisClient.lastStreamId(STREAM);
+      lastId = id == null ? "0-0" : id;
+    } catch (Exception e) {
+      log.warn("l2cache读取删除消息stream失败，需要redis 5及以上版本：{}", e.getMessage());
+      return false;
+    }
+
+    running = true;
+    // 重连回调在I/O线程上执行，只做标记，由读取线程检查
+    redisClient.addReconnectListener(() -> behind = true);
+    thread = new Thread(this, "l2cache-stream-listener");
+    thread.setDaemon(true);
+    thread.start();
+    return true;
+  }
+
+  /** 停止读取 */
+  public synchronized void stop() {
+    running = false;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        if (behind) {
+          behind = false;
+          catchUp();
+        }
+
+        List<StreamEntry> entries = redisClient.xread(STREAM, lastId, BATCH, BLOCK_MS);
+        // lastId之后的消息可能已经被裁剪掉一部分，读到的不是紧接着的消息，应用之前先检查
+        if (entries.isEmpty() || catchUp()) {
+          continue;
+        }
+
+        for (StreamEntry entry : entries) {
+          messageListener.apply(entry.getMessage());
+          lastId = entry.getId();
+        }
+      } catch (Exception e) {
+        if (!running) {
+          return;
+        }
+        log.warn("l2cache读取删除消息stream异常，{}毫秒后从{}继续读取：{}", RETRY_MS, lastId, e.getMessage());
+        behind = true;
+        sleep();
+      }
+    }
+  }
+
+  /**
+   * 没读到的消息已经被裁剪掉时清空全部L1，从stream当前的末尾继续读
+   *
+   * @return 是否清空了L1，清空后已经读到的消息不需要再应用
+   */
+  private boolean catchUp() {
+    String firstId = redisClient.firstStreamId(STREAM);
+    if (firstId == null || compare(lastId, firstId) >= 0) {
+      return false;
+    }
+
+    // 先取末尾ID再清空，清空之后追加的消息还会读到
+    String tailId = redisClient.lastStreamId(STREAM);
+    log.warn("l2cache删除消息stream已经裁剪到{}，本节点只读到{}，清除全部L1数据", firstId, lastId);
+    messageListener.clearAll();
+    lastId = tailId == null ? firstId : tailId;
+    return true;
+  }
+
+  private void sleep() {
+    try {
+      Thread.sleep(RETRY_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+
+  /** 比较两个stream消息ID，格式是 毫秒时间戳-序号 */
+  static int compare(String id1, String id2) {
+    int i1 = id1.indexOf('-');
+    int i2 = id2.indexOf('-');
+    long ms1 = Long.parseLong(id1.substring(0, i1));
+    long ms2 = Long.parseLong(id2.substring(0, i2));
+    if (ms1 != ms2) {
+      return Long.compare(ms1, ms2);
+    }
+
+    long seq1 = Long.parseLong(id1.substring(i1 + 1));
+    long seq2 = Long.parseLong(id2.substring(i2 + 1));
+    return Long.compare(seq1, seq2);
+  }
+}
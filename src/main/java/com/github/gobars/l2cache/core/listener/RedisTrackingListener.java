@@ -0,0 +1,73 @@
+package com.github.gobars.l2cache.core.listener;
+
+import com.github.gobars.l2cache.core.cache.Cache;
+import com.github.gobars.l2cache.core.cache.L2Cache;
+import com.github.gobars.l2cache.core.cache.RedisCacheKey;
+import com.github.gobars.l2cache.core.manager.CacheManager;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * CLIENT TRACKING失效通知的处理者，把redis key还原成缓存名称和缓存key后删除L1
+ *
+ * <p>redis key的格式是 缓存名称 + ":" + 缓存key，按代数清空的缓存在缓存key前面还有代数前缀，
+ * 不是缓存数据的key(例如统计数据)和老代数的key直接忽略
+ *
+ * @author bingoohuang
+ */
+@Slf4j
+public class RedisTrackingListener {
+  /** 缓存管理器 */
+  @Setter private CacheManager cacheManager;
+
+  /**
+   * 处理一个失效通知
+   *
+   * @param redisKey 失效的redis key，为NULL时清空全部L1
+   */
+  public void invalidate(String redisKey) {
+    try {
+      if (redisKey == null) {
+        log.info("收到CLIENT TRACKING清空通知，清除全部L1数据");
+        for (String cacheName : cacheManager.getCacheNames()) {
+          for (Cache cache : cacheManager.getCache(cacheName)) {
+            if (cache instanceof L2Cache) {
+              ((L2Cache) cache).clearL1();
+            }
+          }
+        }
+        return;
+      }
+
+      for (String cacheName : cacheManager.getCacheNames()) {
+        String prefix = cacheName + ":";
+        if (!redisKey.startsWith(prefix)) {
+          continue;
+        }
+
+        String key = redisKey.substring(prefix.length());
+        for (Cache cache : cacheManager.getCache(cacheName)) {
+          if (cache instanceof L2Cache) {
+            evictL1((L2Cache) cache, key);
+          }
+        }
+        log.debug("收到CLIENT TRACKING失效通知，删除L1{}数据,key={}", cacheName, key);
+      }
+    } catch (Exception e) {
+      log.error("l2cache 处理CLIENT TRACKING失效通知异常：{}", e.getMessage(), e);
+    }
+  }
+
+  private static void evictL1(L2Cache cache, String key) {
+    long generation = cache.generation();
+    if (generation == 0) {
+      cache.evictL1(key);
+      return;
+    }
+
+    String generationPrefix = RedisCacheKey.generationPrefix(generation);
+    if (key.startsWith(generationPrefix)) {
+      cache.evictL1(key.substring(generationPrefix.length()));
+    }
+  }
+}
@@ -1,13 +1,21 @@
 package com.github.gobars.l2cache.core.manager;
 
 import com.github.gobars.l2cache.core.cache.Cache;
+import com.github.gobars.l2cache.core.cache.L2Cache;
+import com.github.gobars.l2cache.core.listener.InvalidationMode;
+import com.github.gobars.l2cache.core.listener.RedisBatchPublisher;
 import com.github.gobars.l2cache.core.listener.RedisMessageListener;
+import com.github.gobars.l2cache.core.listener.RedisPublisher;
+import com.github.gobars.l2cache.core.listener.RedisStreamListener;
+import com.github.gobars.l2cache.core.listener.RedisTrackingListener;
 import com.github.gobars.l2cache.core.redis.client.RedisClient;
 import com.github.gobars.l2cache.core.setting.L2Setting;
+import com.github.gobars.l2cache.core.snapshot.L1SnapshotService;
 import com.github.gobars.l2cache.core.stats.CacheStatsInfo;
 import com.github.gobars.l2cache.core.stats.StatsService;
 import com.github.gobars.l2cache.core.support.ThreadPool;
 import com.github.gobars.l2cache.core.util.BeanFactory;
+import com.github.gobars.l2cache.core.util.StringUtils;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -15,9 +23,11 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.CollectionUtils;
 
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * 公共的抽象 {@link CacheManager} 的实现.
@@ -29,7 +39,10 @@ public abstract class AbstractCacheManager
     implements CacheManager, InitializingBean, DisposableBean {
 
   /** redis pub/sub 监听器 */
-  private final RedisMessageListener messageListener = new RedisMessageListener();
+  @Getter private final RedisMessageListener messageListener = new RedisMessageListener();
+
+  /** CLIENT TRACKING 失效通知监听器 */
+  private final RedisTrackingListener trackingListener = new RedisTrackingListener();
 
   /** 缓存容器 外层key是cache_name 里层key是[L1有效时间-L2有效时间-L2自动刷新时间] */
   @Getter
@@ -37,7 +50,7 @@ public abstract class AbstractCacheManager
       new ConcurrentHashMap<>(16);
 
   /** 缓存名称容器 */
-  @Getter private final Set<String> cacheNames = new LinkedHashSet<>();
+  @Getter private final Set<String> cacheNames = new CopyOnWriteArraySet<>();
 
   /** CacheManager 容器 */
   static Set<AbstractCacheManager> cacheManagers = new LinkedHashSet<>();
@@ -48,6 +61,39 @@ public abstract class AbstractCacheManager
   /** redis 客户端 */
   @Getter @Setter RedisClient redisClient;
 
+  /** L1删除消息的合并时间窗口(毫秒)，小于等于0时每次删除立即发布 */
+  @Getter @Setter private long evictBatchWindowMs = 10;
+
+  /** 一条L1删除消息最多包含的key个数 */
+  @Getter @Setter private int evictBatchMaxKeys = 500;
+
+  /** 是否发布二进制pub/sub消息，默认关闭兼容老版本节点，所有节点都升级后再打开 */
+  @Getter @Setter private boolean binaryMessage = false;
+
+  /** 处理删除消息的线程数，同一个缓存的消息由同一个线程按顺序处理 */
+  @Getter @Setter private int listenerThreads = 4;
+
+  /** 每个处理删除消息的线程的队列长度，队列满时丢弃消息并清空对应缓存的L1 */
+  @Getter @Setter private int listenerQueueCapacity = 10000;
+
+  /** 是否发布到缓存专用的频道，默认关闭兼容只订阅公共频道的老版本，所有节点都升级后再打开 */
+  @Getter @Setter private boolean cacheChannel = false;
+
+  /** 合并发布L1删除消息 */
+  @Getter private RedisBatchPublisher evictPublisher;
+
+  /** STREAM模式下删除消息stream的最大长度，节点断线期间的消息超过这个长度时只能清空全部L1 */
+  @Getter @Setter private long streamMaxLen = 100000;
+
+  /** STREAM模式下读取删除消息 */
+  private RedisStreamListener streamListener;
+
+  /** L1快照目录，为空时不保存快照 */
+  @Getter @Setter private String snapshotDir;
+
+  /** L1失效通知的方式，默认广播 */
+  @Getter @Setter private InvalidationMode invalidationMode = InvalidationMode.PUBSUB;
+
   public static Set<AbstractCacheManager> getCacheManager() {
     return cacheManagers;
   }
@@ -86,6 +132,9 @@ public abstract class AbstractCacheManager
           return cache;
         }
       } else {
+        // 先登记缓存名称并订阅再创建缓存，创建之后其他节点的删除消息不会丢失
+        messageListener.addCacheName(name);
+        redisClient.subscribe(messageListener, RedisMessageListener.channelOf(name));
         cacheMap = new ConcurrentHashMap<>(16);
         cacheContainer.put(name, cacheMap);
         // 更新缓存名称
@@ -108,6 +157,34 @@ public abstract class AbstractCacheManager
     }
   }
 
+  @Override
+  public void removeCache(String name) {
+    synchronized (this.cacheContainer) {
+      ConcurrentMap<String, Cache> removed = cacheContainer.remove(name);
+      if (removed == null) {
+        return;
+      }
+      closeBloomFilters(removed.values());
+      cacheNames.remove(name);
+      // 在锁内退订，否则同时重新创建的缓存先订阅(频道还在，什么也不做)，再被这里退订，收不到删除消息
+      redisClient.unsubscribe(messageListener, RedisMessageListener.channelOf(name));
+      messageListener.removeCacheName(name);
+    }
+  }
+
+  /**
+   * 取消缓存的布隆过滤器的定时刷新任务
+   *
+   * @param caches 缓存
+   */
+  private void closeBloomFilters(Collection<Cache> caches) {
+    for (Cache cache : caches) {
+      if (cache instanceof L2Cache && ((L2Cache) cache).getBloomFilter() != null) {
+        ((L2Cache) cache).getBloomFilter().close();
+      }
+    }
+  }
+
   /**
    * 更新缓存名称容器
    *
@@ -138,10 +215,38 @@ public abstract class AbstractCacheManager
 
   @Override
   public void afterPropertiesSet() {
+    RedisPublisher.setBinaryMessage(binaryMessage);
+    RedisPublisher.setCacheChannel(cacheChannel);
+    evictPublisher = new RedisBatchPublisher(redisClient, evictBatchWindowMs, evictBatchMaxKeys);
     messageListener.setCacheManager(this);
-    // 创建监听
+    messageListener.start(listenerThreads, listenerQueueCapacity);
+    // 创建监听，公共频道只接收老版本节点和关闭了缓存专用频道的节点发布的消息
     redisClient.subscribe(messageListener, RedisMessageListener.CHANNEL);
 
+    if (invalidationMode == InvalidationMode.TRACKING) {
+      trackingListener.setCacheManager(this);
+      if (!redisClient.track(trackingListener::invalidate)) {
+        log.warn("l2cache不能开启CLIENT TRACKING，L1失效通知退回广播方式");
+        invalidationMode = InvalidationMode.PUBSUB;
+      }
+    }
+
+    if (invalidationMode == InvalidationMode.STREAM) {
+      streamListener = new RedisStreamListener(redisClient, messageListener);
+      if (streamListener.start()) {
+        RedisPublisher.setStreamMaxLen(streamMaxLen);
+      } else {
+        log.warn("l2cache不能读取删除消息stream，L1失效通知退回广播方式");
+        streamListener = null;
+        invalidationMode = InvalidationMode.PUBSUB;
+      }
+    }
+
+    if (!StringUtils.isBlank(snapshotDir)) {
+      // 监听已经建立，加载期间收到的删除通知不会丢失
+      ThreadPool.run(new L1SnapshotService(Paths.get(snapshotDir), this)::load);
+    }
+
     BeanFactory.getBean(StatsService.class).setCacheManager(this);
     if (isStats()) {
       // 采集缓存命中率数据
@@ -161,7 +266,18 @@ public abstract class AbstractCacheManager
 
   @Override
   public void destroy() {
+    if (evictPublisher != null) {
+      evictPublisher.shutdown();
+    }
+    if (streamListener != null) {
+      streamListener.stop();
+    }
+    messageListener.shutdown();
+    if (!StringUtils.isBlank(snapshotDir)) {
+      new L1SnapshotService(Paths.get(snapshotDir), this).save();
+    }
     ThreadPool.close();
+    cacheContainer.values().forEach(caches -> closeBloomFilters(caches.values()));
     BeanFactory.getBean(StatsService.class).shutdownExecutor();
   }
 
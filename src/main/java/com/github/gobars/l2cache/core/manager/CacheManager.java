@@ -31,6 +31,13 @@ public interface CacheManager {
    */
   Cache getCache(String name, L2Setting l2Setting);
 
+  /**
+   * 删除缓存名称对应的所有{@link Cache}，并取消订阅这个缓存的删除消息，不删除L2中的数据
+   *
+   * @param name 缓存名称
+   */
+  void removeCache(String name);
+
   /**
    * 获取所有缓存名称的集合
    *
@@ -3,11 +3,16 @@ package com.github.gobars.l2cache.core.manager;
 import com.github.gobars.l2cache.core.cache.Cache;
 import com.github.gobars.l2cache.core.cache.CaffeineCache;
 import com.github.gobars.l2cache.core.cache.L2Cache;
+import com.github.gobars.l2cache.core.cache.OffHeapCache;
 import com.github.gobars.l2cache.core.cache.RedisCache;
+import com.github.gobars.l2cache.core.listener.InvalidationMode;
 import com.github.gobars.l2cache.core.redis.client.RedisClient;
 import com.github.gobars.l2cache.core.setting.L2Setting;
+import com.github.gobars.l2cache.core.support.SerializedSizeEstimator;
+import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
+@Slf4j
 public class L2Manager extends AbstractCacheManager {
   public L2Manager(RedisClient redisClient) {
     this.redisClient = redisClient;
@@ -16,9 +21,35 @@ public class L2Manager extends AbstractCacheManager {
 
   @Override
   protected Cache getMissingCache(String name, L2Setting l2Setting) {
-    val l1 = new CaffeineCache(name, l2Setting.getC1Setting(), isStats());
     val l2 = new RedisCache(name, redisClient, l2Setting.getC2Setting(), isStats());
-    return new L2Cache(redisClient, l1, l2, super.isStats(), l2Setting);
+    val c1 = l2Setting.getC1Setting();
+    if (c1.getMaxBytes() > 0 && c1.getSizeEstimator() == null) {
+      c1.setSizeEstimator(new SerializedSizeEstimator(redisClient.getValueSerializer()));
+    }
+    Cache l1 =
+        c1.isOffHeap()
+            ? new OffHeapCache(name, c1, isStats(), redisClient.getValueSerializer())
+            : new CaffeineCache(name, c1, isStats(), l2::getByL1Key);
+    val cache = new L2Cache(redisClient, l1, l2, super.isStats(), l2Setting);
+    cache.setInvalidationMode(invalidationMode(name, l2Setting));
+    cache.setEvictPublisher(getEvictPublisher());
+    return cache;
+  }
+
+  /**
+   * 缓存的L1失效通知方式，CLIENT TRACKING按redis key的缓存名称前缀找到缓存，不使用前缀的缓存退回广播方式
+   *
+   * @param name 缓存名称
+   * @param l2Setting 缓存配置
+   * @return {@link InvalidationMode}
+   */
+  private InvalidationMode invalidationMode(String name, L2Setting l2Setting) {
+    if (getInvalidationMode() == InvalidationMode.TRACKING
+        && !l2Setting.getC2Setting().isUsePrefix()) {
+      log.warn("缓存{}没有使用缓存名称作为前缀，收不到CLIENT TRACKING失效通知，L1失效通知退回广播方式", name);
+      return InvalidationMode.PUBSUB;
+    }
+    return getInvalidationMode();
   }
 
   @Override
@@ -0,0 +1,113 @@
+package com.github.gobars.l2cache.core.redis.client;
+
+import com.github.gobars.l2cache.core.support.ThreadPool;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisConnectionStateAdapter;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * redis 6的客户端缓存(CLIENT TRACKING)，使用RESP2的REDIRECT方式
+ *
+ * <p>数据连接开启追踪后，redis记住这个连接读过的key，key被修改或者删除时把失效通知转发到单独的订阅连接的
+ * {@value #CHANNEL} 频道。失效通知只发给读过这个key的节点，流量和节点自己的热点数据量成正比
+ *
+ * <p>任一连接重连后，追踪状态和期间的失效通知都会丢失，此时重新开启追踪并通知清空全部数据
+ *
+ * @author bingoohuang
+ */
+@Slf4j
+class ClientTracking extends RedisConnectionStateAdapter {
+  /** redis转发失效通知的频道 */
+  static final String CHANNEL = "__redis__:invalidate";
+
+  private final io.lettuce.core.RedisClient client;
+
+  /** 开启追踪的数据连接，所有数据连接的失效通知都转发到同一个订阅连接 */
+  private final List<StatefulRedisConnection<byte[], byte[]>> connections;
+
+  /** 收到失效通知的回调，参数为NULL表示清空全部数据 */
+  private final Consumer<String> invalidator;
+
+  /** 接收失效通知的订阅连接 */
+  private volatile StatefulRedisPubSubConnection<String, String> redirectConnection;
+
+  ClientTracking(
+      io.lettuce.core.RedisClient client,
+      List<StatefulRedisConnection<byte[], byte[]>> connections,
+      Consumer<String> invalidator) {
+    this.client = client;
+    this.connections = connections;
+    this.invalidator = invalidator;
+  }
+
+  /** 创建订阅连接，并在数据连接上开启追踪 */
+  synchronized void start() {
+    StatefulRedisPubSubConnection<String, String> old = this.redirectConnection;
+    if (old != null) {
+      old.closeAsync();
+    }
+
+    StatefulRedisPubSubConnection<String, String> redirect = client.connectPubSub();
+    long redirectId;
+    try {
+      // 订阅之后连接只能执行订阅相关的命令，需要先取到连接id
+      redirectId = redirect.sync().clientId();
+      redirect.addListener(
+          new RedisPubSubAdapter<String, String>() {
+            @Override
+            public void message(String channel, String message) {
+              invalidator.accept(message);
+            }
+          });
+      redirect.sync().subscribe(CHANNEL);
+
+      for (StatefulRedisConnection<byte[], byte[]> connection : connections) {
+        CommandArgs<byte[], byte[]> args =
+            new CommandArgs<>(ByteArrayCodec.INSTANCE)
+                .add("TRACKING")
+                .add("ON")
+                .add("REDIRECT")
+                .add(redirectId);
+        connection
+            .sync()
+            .dispatch(CommandType.CLIENT, new StatusOutput<>(ByteArrayCodec.INSTANCE), args);
+      }
+    } catch (RuntimeException e) {
+      redirect.closeAsync();
+      this.redirectConnection = null;
+      throw e;
+    }
+
+    this.redirectConnection = redirect;
+    log.info("l2cache开启CLIENT TRACKING，失效通知转发到连接 {}", redirectId);
+  }
+
+  @Override
+  public void onRedisConnected(RedisChannelHandler<?, ?> handler, SocketAddress address) {
+    if (!connections.contains(handler) && handler != redirectConnection) {
+      return;
+    }
+
+    // 连接事件在I/O线程上回调，不能在这里执行同步命令
+    ThreadPool.run(
+        () -> {
+          try {
+            start();
+          } catch (Exception e) {
+            log.error("l2cache重连后开启CLIENT TRACKING异常：{}", e.getMessage(), e);
+          }
+          invalidator.accept(null);
+        });
+  }
+}
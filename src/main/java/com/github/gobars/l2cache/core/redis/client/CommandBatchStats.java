@@ -0,0 +1,37 @@
+package com.github.gobars.l2cache.core.redis.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 写命令合并发送的统计，统计的是上次获取以来的数据
+ *
+ * @author bingoohuang
+ */
+@Data
+@AllArgsConstructor
+public class CommandBatchStats {
+  /** 发送的批次数 */
+  private long batches;
+
+  /** 发送的命令数 */
+  private long commands;
+
+  /** 最大的一批命令数 */
+  private long maxBatchSize;
+
+  /** 从一批的第一条命令到发送的平均等待时间(微秒) */
+  private long avgFlushLatencyMicros;
+
+  /** 从一批的第一条命令到发送的最长等待时间(微秒) */
+  private long maxFlushLatencyMicros;
+
+  /**
+   * 平均每批的命令数
+   *
+   * @return 命令数
+   */
+  public double getAvgBatchSize() {
+    return batches == 0 ? 0 : (double) commands / batches;
+  }
+}
@@ -0,0 +1,149 @@
+package com.github.gobars.l2cache.core.redis.client;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulConnection;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 合并发送写命令，关闭连接的自动发送，一个时间窗口内或者攒够一批的命令一次写到socket
+ *
+ * <p>调用方仍然同步等待命令结果，并发写的线程越多合并效果越好，单线程写最多多等一个时间窗口
+ *
+ * @param <A> 连接的异步命令接口
+ * @author bingoohuang
+ */
+final class CommandBatcher<A> {
+  /** 定时发送线程池，所有连接共用 */
+  private static final ScheduledThreadPoolExecutor executor = newExecutor();
+
+  /** 手动发送的连接，只用来执行合并发送的写命令 */
+  private final StatefulConnection<byte[], byte[]> connection;
+
+  private final A async;
+
+  /** 时间窗口(微秒) */
+  private final long windowMicros;
+
+  /** 一批最多的命令数 */
+  private final int maxBatchSize;
+
+  /** 当前这一批的命令数 */
+  private int pending;
+
+  /** 当前这一批第一条命令的时间 */
+  private long batchStartNanos;
+
+  /** 当前这一批的序号，定时任务只发送自己那一批 */
+  private long batchSeq;
+
+  private long batches;
+  private long commands;
+  private long maxBatch;
+  private long totalLatencyNanos;
+  private long maxLatencyNanos;
+
+  /**
+   * @param connection 专用的连接
+   * @param async 连接的异步命令接口
+   * @param windowMicros 时间窗口(微秒)
+   * @param maxBatchSize 一批最多的命令数
+   */
+  CommandBatcher(
+      StatefulConnection<byte[], byte[]> connection, A async, long windowMicros, int maxBatchSize) {
+    this.connection = connection;
+    this.async = async;
+    this.windowMicros = windowMicros;
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    connection.setAutoFlushCommands(false);
+  }
+
+  /**
+   * 执行一条写命令并等待结果
+   *
+   * @param command 在异步接口上发出命令
+   * @param <T> 返回值类型
+   * @return 命令结果
+   */
+  <T> T execute(Function<A, RedisFuture<T>> command) {
+    RedisFuture<T> future;
+    long scheduleSeq = -1;
+    synchronized (this) {
+      future = command.apply(async);
+      if (pending++ == 0) {
+        batchStartNanos = System.nanoTime();
+        scheduleSeq = batchSeq;
+      }
+      if (pending >= maxBatchSize) {
+        flush();
+        scheduleSeq = -1;
+      }
+    }
+
+    if (scheduleSeq >= 0) {
+      long seq = scheduleSeq;
+      executor.schedule(() -> flush(seq), windowMicros, TimeUnit.MICROSECONDS);
+    }
+    return LettuceFutures.awaitOrCancel(
+        future, connection.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * 上次调用以来的统计数据
+   *
+   * @return {@link CommandBatchStats}
+   */
+  synchronized CommandBatchStats getAndResetStats() {
+    CommandBatchStats stats =
+        new CommandBatchStats(
+            batches,
+            commands,
+            maxBatch,
+            batches == 0 ? 0 : totalLatencyNanos / batches / 1000,
+            maxLatencyNanos / 1000);
+    batches = 0;
+    commands = 0;
+    maxBatch = 0;
+    totalLatencyNanos = 0;
+    maxLatencyNanos = 0;
+    return stats;
+  }
+
+  private synchronized void flush(long seq) {
+    if (seq == batchSeq) {
+      flush();
+    }
+  }
+
+  /** 发送当前这一批，调用方持有锁 */
+  private void flush() {
+    if (pending == 0) {
+      return;
+    }
+
+    connection.flushCommands();
+    long latency = System.nanoTime() - batchStartNanos;
+    batches++;
+    commands += pending;
+    maxBatch = Math.max(maxBatch, pending);
+    totalLatencyNanos += latency;
+    maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+    pending = 0;
+    batchSeq++;
+  }
+
+  private static ScheduledThreadPoolExecutor newExecutor() {
+    ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(
+            1,
+            r -> {
+              Thread thread = new Thread(r, "l2cache-command-batcher");
+              thread.setDaemon(true);
+              return thread;
+            });
+    return executor;
+  }
+}
@@ -3,9 +3,13 @@ package com.github.gobars.l2cache.core.redis.client;
 import com.github.gobars.l2cache.core.listener.RedisMessageListener;
 import com.github.gobars.l2cache.core.redis.serializer.RedisSerializer;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public interface RedisClient {
 
@@ -32,6 +36,16 @@ public interface RedisClient {
    */
   <T> T get(String key, Class<T> t);
 
+  /**
+   * 通过key获取储存在redis中的value及剩余生存时间(毫秒)
+   *
+   * <p>GET和PTTL以管道方式连续发出，只需要一次网络往返
+   *
+   * @param key key
+   * @return {@link RedisValue}
+   */
+  RedisValue getWithTtl(String key);
+
   /**
    * 向redis存入key和value,并释放连接资源
    *
@@ -54,6 +68,33 @@ public interface RedisClient {
    */
   String set(String key, Object value, long time, TimeUnit unit);
 
+  /**
+   * 一次MGET获取一批key对应的value
+   *
+   * @param keys key列表
+   * @return 与keys顺序一致的value列表，key不存在对应位置为NULL
+   */
+  List<Object> mget(List<String> keys);
+
+  /**
+   * 获取一批key对应的value及剩余生存时间(毫秒)
+   *
+   * <p>MGET和每个key的PTTL以管道方式连续发出，只需要一次网络往返
+   *
+   * @param keys key列表
+   * @return 与keys顺序一致的 {@link RedisValue} 列表
+   */
+  List<RedisValue> mgetWithTtl(List<String> keys);
+
+  /**
+   * 以管道方式批量存入key和value，并设置相同的过期时间，如果key已经存在则覆盖
+   *
+   * @param values key和value
+   * @param time 过期时间
+   * @param unit 过期时间单位
+   */
+  void setAll(Map<String, Object> values, long time, TimeUnit unit);
+
   /**
    * Set the string value as value of the key. The string can't be longer than 1073741824 bytes (1
    * GB).
@@ -106,6 +147,49 @@ public interface RedisClient {
    */
   long getExpireSecs(String key);
 
+  /**
+   * 以管道方式把bitmap中一批offset对应的位设置为1
+   *
+   * @param key bitmap的key
+   * @param offsets 需要设置的位
+   */
+  void setBits(String key, long[] offsets);
+
+  /**
+   * 读取key中字符串值指定范围的原始字节，不经过value序列化
+   *
+   * @param key key
+   * @param start 开始位置(字节，包含)
+   * @param end 结束位置(字节，包含)
+   * @return 原始字节，key不存在或超出范围时返回空数组
+   */
+  byte[] getRange(String key, long start, long end);
+
+  /**
+   * 将key改名为newKey，newKey已经存在时覆盖
+   *
+   * @param key key
+   * @param newKey 新的key，集群模式下需要和key在同一个slot
+   * @return 成功 返回OK
+   */
+  String rename(String key, String newKey);
+
+  /**
+   * 计数器加1(INCR)
+   *
+   * @param key key
+   * @return 加1之后的值
+   */
+  long incr(String key);
+
+  /**
+   * 读取INCR写入的计数器
+   *
+   * @param key key
+   * @return 计数器的值，key不存在时返回0
+   */
+  long getCounter(String key);
+
   /**
    * 查询符合条件的key
    *
@@ -114,6 +198,23 @@ public interface RedisClient {
    */
   Set<String> scan(String pattern);
 
+  /**
+   * 逐页查询符合条件的key，每查到一页回调一次，不在内存中保存全部key
+   *
+   * @param pattern 表达式
+   * @param count 每页的建议大小(SCAN的COUNT参数)
+   * @param consumer 每页key的回调，页可能为空
+   */
+  void scan(String pattern, int count, Consumer<List<String>> consumer);
+
+  /**
+   * 在后台线程回收内存的删除(UNLINK)，redis不支持时退回DEL
+   *
+   * @param keys 需要删除的key
+   * @return 删除的key个数
+   */
+  Long unlink(Collection<String> keys);
+
   /**
    * 执行Lua脚本
    *
@@ -124,6 +225,78 @@ public interface RedisClient {
    */
   Object eval(String script, List<String> keys, List<String> args);
 
+  /**
+   * 异步获取储存在redis中的value
+   *
+   * @param key key
+   * @return 成功返回value 失败返回null
+   */
+  CompletableFuture<Object> getAsync(String key);
+
+  /**
+   * 异步获取储存在redis中的value及剩余生存时间(毫秒)
+   *
+   * @param key key
+   * @return {@link RedisValue}
+   */
+  CompletableFuture<RedisValue> getWithTtlAsync(String key);
+
+  /**
+   * 异步向redis存入key和value，如果key已经存在则覆盖
+   *
+   * @param key key
+   * @param value value
+   * @param time 过期时间
+   * @param unit 过期时间单位
+   * @return 成功 返回OK
+   */
+  CompletableFuture<String> setAsync(String key, Object value, long time, TimeUnit unit);
+
+  /**
+   * 异步执行 SET key value NX EX time
+   *
+   * @param key key
+   * @param value value
+   * @param time 过期时间(秒)
+   * @return 成功 返回OK，key已经存在返回NULL
+   */
+  CompletableFuture<String> setNxExAsync(String key, Object value, long time);
+
+  /**
+   * 异步把bitmap中一批offset对应的位设置为1，只发送命令不等待结果
+   *
+   * @param key bitmap的key
+   * @param offsets 需要设置的位
+   * @return 所有位设置完成
+   */
+  CompletableFuture<Void> setBitsAsync(String key, long[] offsets);
+
+  /**
+   * 异步删除指定的key
+   *
+   * @param keys 一个key 也可以使 string 数组
+   * @return 返回删除成功的个数
+   */
+  CompletableFuture<Long> deleteAsync(String... keys);
+
+  /**
+   * 异步以秒为单位，返回给定 key 的剩余生存时间
+   *
+   * @param key key
+   * @return 当 key 不存在时返回 -2，没有设置剩余生存时间时返回 -1
+   */
+  CompletableFuture<Long> getExpireSecsAsync(String key);
+
+  /**
+   * 异步执行Lua脚本
+   *
+   * @param script Lua 脚本
+   * @param keys 参数
+   * @param args 参数值
+   * @return 返回结果
+   */
+  CompletableFuture<Object> evalAsync(String script, List<String> keys, List<String> args);
+
   /**
    * 发送消息
    *
@@ -133,6 +306,59 @@ public interface RedisClient {
    */
   Long publish(String channel, String message);
 
+  /**
+   * 发送二进制消息
+   *
+   * @param channel 发送消息的频道
+   * @param message 消息内容
+   * @return Long
+   */
+  Long publish(String channel, byte[] message);
+
+  /**
+   * 向stream追加一条消息，stream长度大约保持在maxLen以内
+   *
+   * @param key stream key
+   * @param message 消息内容
+   * @param maxLen stream最大长度
+   * @return 消息ID
+   */
+  String xadd(String key, byte[] message, long maxLen);
+
+  /**
+   * 读取stream中ID大于lastId的消息，没有消息时最多阻塞blockMs毫秒。阻塞读使用单独的连接，不影响其他命令
+   *
+   * @param key stream key
+   * @param lastId 已经读过的最后一条消息ID
+   * @param count 最多读取的消息条数
+   * @param blockMs 最长阻塞时间(毫秒)
+   * @return 消息列表，没有消息时返回空列表
+   */
+  List<StreamEntry> xread(String key, String lastId, int count, long blockMs);
+
+  /**
+   * stream中第一条消息的ID，更早的消息已经被裁剪掉
+   *
+   * @param key stream key
+   * @return 消息ID，stream为空时返回NULL
+   */
+  String firstStreamId(String key);
+
+  /**
+   * stream中最后一条消息的ID
+   *
+   * @param key stream key
+   * @return 消息ID，stream为空时返回NULL
+   */
+  String lastStreamId(String key);
+
+  /**
+   * set、expire、delete合并发送的统计，上次获取以来的数据
+   *
+   * @return 统计数据，没有开启合并发送时返回NULL
+   */
+  CommandBatchStats getCommandBatchStats();
+
   /**
    * 绑定监听器
    *
@@ -141,6 +367,29 @@ public interface RedisClient {
    */
   void subscribe(RedisMessageListener messageListener, String... channel);
 
+  /**
+   * 取消监听器订阅的频道
+   *
+   * @param messageListener 消息监听器
+   * @param channel 信道
+   */
+  void unsubscribe(RedisMessageListener messageListener, String... channel);
+
+  /**
+   * 开启redis 6的客户端缓存(CLIENT TRACKING)，读过的key被修改或删除时由redis推送失效通知
+   *
+   * @param invalidator 收到失效通知的回调，参数是redis key，为NULL时表示需要清空全部数据
+   * @return 是否开启成功，不支持时返回false
+   */
+  boolean track(Consumer<String> invalidator);
+
+  /**
+   * 注册连接建立(包括断线重连)时的回调，回调在I/O线程上执行，不能在回调里执行redis命令
+   *
+   * @param listener 回调
+   */
+  void addReconnectListener(Runnable listener);
+
   /** @return the key {@link RedisSerializer}. */
   RedisSerializer<String> getKeySerializer();
 
@@ -10,18 +10,23 @@ import io.lettuce.core.*;
 import io.lettuce.core.cluster.RedisClusterClient;
 import io.lettuce.core.cluster.RedisClusterURIUtil;
 import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
 import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
 import io.lettuce.core.codec.ByteArrayCodec;
 import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
-import io.lettuce.core.pubsub.api.sync.RedisPubSubCommands;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
+import java.net.SocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -37,21 +42,34 @@ public class RedisClientCluster implements RedisClient {
   @Getter @Setter private RedisSerializer<Object> valueSerializer = new JsonRedisSerializer();
 
   private final RedisClusterClient cluster;
-  private final StatefulRedisClusterConnection<byte[], byte[]> connection;
-  private final StatefulRedisPubSubConnection<String, String> pubsubConnection;
+  private final RedisConnections<StatefulRedisClusterConnection<byte[], byte[]>> connections;
+  private final StatefulRedisPubSubConnection<byte[], byte[]> pubsubConnection;
+
+  /** 合并发送写命令，没有开启时为null */
+  private final CommandBatcher<RedisAdvancedClusterAsyncCommands<byte[], byte[]>> batcher;
+
+  /** 每个监听器的订阅连接 */
+  private final ConcurrentMap<RedisMessageListener, StatefulRedisPubSubConnection<byte[], byte[]>>
+      subscriptions = new ConcurrentHashMap<>();
+
+  /** stream阻塞读的连接，阻塞期间不能执行其他命令，所以和数据连接分开 */
+  private StatefulRedisClusterConnection<byte[], byte[]> blockingConnection;
 
   public RedisClientCluster(RedisProperties properties) {
     log.info("l2cache redis配置" + JSON.toJSONString(properties));
     List<RedisURI> uris = RedisClusterURIUtil.toRedisURIs(URI.create(properties.getCluster()));
-    this.cluster = RedisClusterClient.create(uris);
-    this.connection = cluster.connect(new ByteArrayCodec());
-    this.pubsubConnection = cluster.connectPubSub();
+    this.cluster = RedisClusterClient.create(RedisConnections.resources(properties), uris);
+    this.connections =
+        new RedisConnections<>(
+            properties.getConnections(), () -> cluster.connect(new ByteArrayCodec()));
+    this.batcher = newBatcher(properties);
+    this.pubsubConnection = cluster.connectPubSub(new ByteArrayCodec());
   }
 
   @Override
   public Object get(String key) {
     try {
-      RedisClusterCommands<byte[], byte[]> sync = connection.sync();
+      RedisClusterCommands<byte[], byte[]> sync = connection().sync();
       return getValueSerializer().deserialize(sync.get(getKeySerializer().serialize(key)));
     } catch (SerializationException e) {
       throw e;
@@ -65,11 +83,32 @@ public class RedisClientCluster implements RedisClient {
     return (T) get(key);
   }
 
+  @Override
+  public RedisValue getWithTtl(String key) {
+    try {
+      byte[] keyBytes = getKeySerializer().serialize(key);
+      RedisAdvancedClusterAsyncCommands<byte[], byte[]> async = connection().async();
+      // 两个命令连续写出，不等待中间响应
+      RedisFuture<byte[]> value = async.get(keyBytes);
+      RedisFuture<Long> ttl = async.pttl(keyBytes);
+      LettuceFutures.awaitAll(connection().getTimeout(), value, ttl);
+      return new RedisValue(getValueSerializer().deserialize(value.get()), ttl.get());
+    } catch (SerializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
   @Override
   public String set(String key, Object value) {
     try {
-      RedisClusterCommands<byte[], byte[]> sync = connection.sync();
-      return sync.set(getKeySerializer().serialize(key), getValueSerializer().serialize(value));
+      byte[] bkey = getKeySerializer().serialize(key);
+      byte[] bvalue = getValueSerializer().serialize(value);
+      if (batcher != null) {
+        return batcher.execute(async -> async.set(bkey, bvalue));
+      }
+      return connection().sync().set(bkey, bvalue);
     } catch (SerializationException e) {
       throw e;
     } catch (Exception e) {
@@ -80,11 +119,88 @@ public class RedisClientCluster implements RedisClient {
   @Override
   public String set(String key, Object value, long time, TimeUnit unit) {
     try {
-      RedisClusterCommands<byte[], byte[]> sync = connection.sync();
-      return sync.setex(
-          getKeySerializer().serialize(key),
-          unit.toSeconds(time),
-          getValueSerializer().serialize(value));
+      byte[] bkey = getKeySerializer().serialize(key);
+      byte[] bvalue = getValueSerializer().serialize(value);
+      long secs = unit.toSeconds(time);
+      if (batcher != null) {
+        return batcher.execute(async -> async.setex(bkey, secs, bvalue));
+      }
+      return connection().sync().setex(bkey, secs, bvalue);
+    } catch (SerializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public List<Object> mget(List<String> keys) {
+    if (keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    try {
+      byte[][] bkeys = keys.stream().map(getKeySerializer()::serialize).toArray(byte[][]::new);
+      List<Object> values = new ArrayList<>(keys.size());
+      for (KeyValue<byte[], byte[]> kv : connection().sync().mget(bkeys)) {
+        values.add(kv.hasValue() ? getValueSerializer().deserialize(kv.getValue()) : null);
+      }
+      return values;
+    } catch (SerializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public List<RedisValue> mgetWithTtl(List<String> keys) {
+    if (keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    try {
+      byte[][] bkeys = keys.stream().map(getKeySerializer()::serialize).toArray(byte[][]::new);
+      RedisAdvancedClusterAsyncCommands<byte[], byte[]> async = connection().async();
+      // MGET和PTTL连续写出，不等待中间响应
+      RedisFuture<?>[] futures = new RedisFuture<?>[bkeys.length + 1];
+      RedisFuture<List<KeyValue<byte[], byte[]>>> values = async.mget(bkeys);
+      futures[bkeys.length] = values;
+      for (int i = 0; i < bkeys.length; i++) {
+        futures[i] = async.pttl(bkeys[i]);
+      }
+      LettuceFutures.awaitAll(connection().getTimeout(), futures);
+
+      List<KeyValue<byte[], byte[]>> kvs = values.get();
+      List<RedisValue> result = new ArrayList<>(keys.size());
+      for (int i = 0; i < bkeys.length; i++) {
+        KeyValue<byte[], byte[]> kv = kvs.get(i);
+        Object value = kv.hasValue() ? getValueSerializer().deserialize(kv.getValue()) : null;
+        result.add(new RedisValue(value, (Long) futures[i].get()));
+      }
+      return result;
+    } catch (SerializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void setAll(Map<String, Object> values, long time, TimeUnit unit) {
+    if (values.isEmpty()) {
+      return;
+    }
+
+    try {
+      long secs = unit.toSeconds(time);
+      List<RedisFuture<String>> futures = new ArrayList<>(values.size());
+      for (Map.Entry<String, Object> e : values.entrySet()) {
+        byte[] keyBytes = getKeySerializer().serialize(e.getKey());
+        byte[] valueBytes = getValueSerializer().serialize(e.getValue());
+        futures.add(connection().async().setex(keyBytes, secs, valueBytes));
+      }
+      LettuceFutures.awaitAll(connection().getTimeout(), futures.toArray(new RedisFuture<?>[0]));
     } catch (SerializationException e) {
       throw e;
     } catch (Exception e) {
@@ -95,7 +211,7 @@ public class RedisClientCluster implements RedisClient {
   @Override
   public String setNxEx(String key, Object value, long time) {
     try {
-      RedisClusterCommands<byte[], byte[]> sync = connection.sync();
+      RedisClusterCommands<byte[], byte[]> sync = connection().sync();
       return sync.set(
           getKeySerializer().serialize(key),
           getValueSerializer().serialize(value),
@@ -114,13 +230,14 @@ public class RedisClientCluster implements RedisClient {
     }
 
     try {
-      RedisClusterCommands<byte[], byte[]> sync = connection.sync();
-
       final byte[][] bkeys = new byte[keys.length][];
       for (int i = 0; i < keys.length; i++) {
         bkeys[i] = getKeySerializer().serialize(keys[i]);
       }
-      return sync.del(bkeys);
+      if (batcher != null) {
+        return batcher.execute(async -> async.del(bkeys));
+      }
+      return connection().sync().del(bkeys);
     } catch (SerializationException e) {
       throw e;
     } catch (Exception e) {
@@ -136,7 +253,7 @@ public class RedisClientCluster implements RedisClient {
   @Override
   public Boolean hasKey(String key) {
     try {
-      RedisClusterCommands<byte[], byte[]> sync = connection.sync();
+      RedisClusterCommands<byte[], byte[]> sync = connection().sync();
       return sync.exists(getKeySerializer().serialize(key)) > 0;
     } catch (SerializationException e) {
       throw e;
@@ -148,8 +265,11 @@ public class RedisClientCluster implements RedisClient {
   @Override
   public Boolean expire(String key, long timeoutSecs) {
     try {
-      RedisClusterCommands<byte[], byte[]> sync = connection.sync();
-      return sync.expire(getKeySerializer().serialize(key), timeoutSecs);
+      byte[] bkey = getKeySerializer().serialize(key);
+      if (batcher != null) {
+        return batcher.execute(async -> async.expire(bkey, timeoutSecs));
+      }
+      return connection().sync().expire(bkey, timeoutSecs);
     } catch (SerializationException e) {
       throw e;
     } catch (Exception e) {
@@ -160,7 +280,7 @@ public class RedisClientCluster implements RedisClient {
   @Override
   public long getExpireSecs(String key) {
     try {
-      RedisClusterCommands<byte[], byte[]> sync = connection.sync();
+      RedisClusterCommands<byte[], byte[]> sync = connection().sync();
       return sync.ttl(getKeySerializer().serialize(key));
     } catch (SerializationException e) {
       throw e;
@@ -169,32 +289,131 @@ public class RedisClientCluster implements RedisClient {
     }
   }
 
+  @Override
+  public void setBits(String key, long[] offsets) {
+    if (offsets.length == 0) {
+      return;
+    }
+
+    try {
+      byte[] keyBytes = getKeySerializer().serialize(key);
+      RedisFuture<?>[] futures = new RedisFuture<?>[offsets.length];
+      for (int i = 0; i < offsets.length; i++) {
+        futures[i] = connection().async().setbit(keyBytes, offsets[i], 1);
+      }
+      LettuceFutures.awaitAll(connection().getTimeout(), futures);
+    } catch (SerializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public byte[] getRange(String key, long start, long end) {
+    try {
+      byte[] value = connection().sync().getrange(getKeySerializer().serialize(key), start, end);
+      return value == null ? new byte[0] : value;
+    } catch (SerializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public String rename(String key, String newKey) {
+    try {
+      RedisClusterCommands<byte[], byte[]> sync = connection().sync();
+      return sync.rename(getKeySerializer().serialize(key), getKeySerializer().serialize(newKey));
+    } catch (SerializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public long incr(String key) {
+    try {
+      RedisClusterCommands<byte[], byte[]> sync = connection().sync();
+      return sync.incr(getKeySerializer().serialize(key));
+    } catch (SerializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public long getCounter(String key) {
+    try {
+      RedisClusterCommands<byte[], byte[]> sync = connection().sync();
+      byte[] value = sync.get(getKeySerializer().serialize(key));
+      return value == null ? 0 : Long.parseLong(new String(value, StandardCharsets.UTF_8));
+    } catch (SerializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
   @Override
   public Set<String> scan(String pattern) {
     Set<String> keys = new HashSet<>();
+    scan(pattern, 1000, keys::addAll);
+    return keys;
+  }
+
+  @Override
+  public void scan(String pattern, int count, Consumer<List<String>> consumer) {
     try {
-      RedisClusterCommands<byte[], byte[]> sync = connection.sync();
-      boolean finished;
-      ScanCursor cursor = ScanCursor.INITIAL;
-      do {
-        KeyScanCursor<byte[]> scanCursor =
-            sync.scan(cursor, ScanArgs.Builder.limit(1000).match(pattern));
+      RedisClusterCommands<byte[], byte[]> sync = connection().sync();
+      ScanArgs args = ScanArgs.Builder.limit(count).match(pattern);
+      KeyScanCursor<byte[]> scanCursor = sync.scan(args);
+      while (true) {
+        List<String> keys = new ArrayList<>(scanCursor.getKeys().size());
         scanCursor.getKeys().forEach(key -> keys.add((String) getKeySerializer().deserialize(key)));
-        finished = scanCursor.isFinished();
-        cursor = ScanCursor.of(scanCursor.getCursor());
-      } while (!finished);
+        consumer.accept(keys);
+        if (scanCursor.isFinished()) {
+          return;
+        }
+        scanCursor = sync.scan(scanCursor, args);
+      }
     } catch (SerializationException e) {
       throw e;
     } catch (Exception e) {
       throw new RedisClientException(e.getMessage(), e);
     }
-    return keys;
   }
 
+  @Override
+  public Long unlink(Collection<String> keys) {
+    if (keys.isEmpty()) {
+      return 0L;
+    }
+    try {
+      byte[][] bkeys = keys.stream().map(getKeySerializer()::serialize).toArray(byte[][]::new);
+      RedisClusterCommands<byte[], byte[]> sync = connection().sync();
+      try {
+        return sync.unlink(bkeys);
+      } catch (RedisCommandExecutionException e) {
+        // redis 4以下没有UNLINK
+        log.debug("UNLINK执行失败，改用DEL：{}", e.getMessage());
+        return sync.del(bkeys);
+      }
+    } catch (SerializationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+
   @Override
   public Object eval(String script, List<String> keys, List<String> args) {
     try {
-      RedisClusterCommands<byte[], byte[]> sync = connection.sync();
+      RedisClusterCommands<byte[], byte[]> sync = connection().sync();
       List<byte[]> bkeys =
           keys.stream()
               .map(key -> key.getBytes(StandardCharsets.UTF_8))
@@ -215,11 +434,89 @@ public class RedisClientCluster implements RedisClient {
     }
   }
 
+  @Override
+  public CompletableFuture<Object> getAsync(String key) {
+    byte[] keyBytes = getKeySerializer().serialize(key);
+    return RedisFutures.toFuture(
+        connection().async().get(keyBytes), v -> getValueSerializer().deserialize(v));
+  }
+
+  @Override
+  public CompletableFuture<RedisValue> getWithTtlAsync(String key) {
+    byte[] keyBytes = getKeySerializer().serialize(key);
+    RedisAdvancedClusterAsyncCommands<byte[], byte[]> async = connection().async();
+    RedisFuture<byte[]> value = async.get(keyBytes);
+    RedisFuture<Long> ttl = async.pttl(keyBytes);
+    return RedisFutures.toFuture(
+        value.thenCombine(ttl, (v, t) -> new RedisValue(getValueSerializer().deserialize(v), t)),
+        v -> v);
+  }
+
+  @Override
+  public CompletableFuture<String> setAsync(String key, Object value, long time, TimeUnit unit) {
+    byte[] keyBytes = getKeySerializer().serialize(key);
+    byte[] valueBytes = getValueSerializer().serialize(value);
+    return RedisFutures.toFuture(
+        connection().async().setex(keyBytes, unit.toSeconds(time), valueBytes), v -> v);
+  }
+
+  @Override
+  public CompletableFuture<String> setNxExAsync(String key, Object value, long time) {
+    byte[] keyBytes = getKeySerializer().serialize(key);
+    byte[] valueBytes = getValueSerializer().serialize(value);
+    return RedisFutures.toFuture(
+        connection().async().set(keyBytes, valueBytes, SetArgs.Builder.nx().ex(time)), v -> v);
+  }
+  @Override
+  public CompletableFuture<Void> setBitsAsync(String key, long[] offsets) {
+    byte[] keyBytes = getKeySerializer().serialize(key);
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[offsets.length];
+    for (int i = 0; i < offsets.length; i++) {
+      futures[i] = connection().async().setbit(keyBytes, offsets[i], 1).toCompletableFuture();
+    }
+    return CompletableFuture.allOf(futures);
+  }
+
+
+  @Override
+  public CompletableFuture<Long> deleteAsync(String... keys) {
+    if (Objects.isNull(keys) || keys.length == 0) {
+      return CompletableFuture.completedFuture(0L);
+    }
+
+    final byte[][] bkeys = new byte[keys.length][];
+    for (int i = 0; i < keys.length; i++) {
+      bkeys[i] = getKeySerializer().serialize(keys[i]);
+    }
+    return RedisFutures.toFuture(connection().async().del(bkeys), v -> v);
+  }
+
+  @Override
+  public CompletableFuture<Long> getExpireSecsAsync(String key) {
+    byte[] keyBytes = getKeySerializer().serialize(key);
+    return RedisFutures.toFuture(connection().async().ttl(keyBytes), v -> v);
+  }
+
+  @Override
+  public CompletableFuture<Object> evalAsync(String script, List<String> keys, List<String> args) {
+    byte[][] bkeys =
+        keys.stream().map(key -> key.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+    byte[][] bargs =
+        args.stream().map(arg -> arg.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+    RedisFuture<Object> f =
+        connection().async().eval(script, ScriptOutputType.INTEGER, bkeys, bargs);
+    return RedisFutures.toFuture(f, v -> v);
+  }
+
   @Override
   public Long publish(String channel, String message) {
+    return publish(channel, message.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public Long publish(String channel, byte[] message) {
     try {
-      RedisPubSubCommands<String, String> sync = pubsubConnection.sync();
-      return sync.publish(channel, message);
+      return pubsubConnection.sync().publish(channel.getBytes(StandardCharsets.UTF_8), message);
     } catch (SerializationException e) {
       throw e;
     } catch (Exception e) {
@@ -227,17 +524,132 @@ public class RedisClientCluster implements RedisClient {
     }
   }
 
+  @Override
+  public boolean track(Consumer<String> invalidator) {
+    // 集群模式下追踪状态在每个节点的连接上，失效通知只能转发给同一个节点上的连接，暂不支持
+    log.warn("l2cache集群模式不支持CLIENT TRACKING");
+    return false;
+  }
+
+  @Override
+  public void addReconnectListener(Runnable listener) {
+    cluster.addListener(
+        new RedisConnectionStateAdapter() {
+          @Override
+          public void onRedisConnected(RedisChannelHandler<?, ?> handler, SocketAddress address) {
+            listener.run();
+          }
+        });
+  }
+
+  @Override
+  public String xadd(String key, byte[] message, long maxLen) {
+    try {
+      return StreamCommands.xadd(connection().sync(), key, message, maxLen);
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public List<StreamEntry> xread(String key, String lastId, int count, long blockMs) {
+    try {
+      return StreamCommands.xread(blockingConnection().sync(), key, lastId, count, blockMs);
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public String firstStreamId(String key) {
+    try {
+      return StreamCommands.firstId(connection().sync(), key);
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public String lastStreamId(String key) {
+    try {
+      return StreamCommands.lastId(connection().sync(), key);
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  private CommandBatcher<RedisAdvancedClusterAsyncCommands<byte[], byte[]>> newBatcher(
+      RedisProperties properties) {
+    if (properties.getBatchWindowMicros() == null || properties.getBatchWindowMicros() <= 0) {
+      return null;
+    }
+
+    StatefulRedisClusterConnection<byte[], byte[]> batchConnection =
+        cluster.connect(new ByteArrayCodec());
+    return new CommandBatcher<>(
+        batchConnection,
+        batchConnection.async(),
+        properties.getBatchWindowMicros(),
+        properties.getBatchMaxCommands());
+  }
+
+  @Override
+  public CommandBatchStats getCommandBatchStats() {
+    return batcher == null ? null : batcher.getAndResetStats();
+  }
+
+  /** 当前线程使用的数据连接 */
+  private StatefulRedisClusterConnection<byte[], byte[]> connection() {
+    return connections.get();
+  }
+
+  /** 阻塞读使用的连接，第一次使用时创建 */
+  private synchronized StatefulRedisClusterConnection<byte[], byte[]> blockingConnection() {
+    if (blockingConnection == null) {
+      blockingConnection = cluster.connect(new ByteArrayCodec());
+    }
+    return blockingConnection;
+  }
+
   @Override
   public void subscribe(RedisMessageListener messageListener, String... channels) {
     try {
-      StatefulRedisPubSubConnection<String, String> connection = cluster.connectPubSub();
+      // 同一个监听器复用一个订阅连接，按需增加订阅的频道
+      StatefulRedisPubSubConnection<byte[], byte[]> connection =
+          subscriptions.computeIfAbsent(
+              messageListener,
+              listener -> {
+                StatefulRedisPubSubConnection<byte[], byte[]> c =
+                    cluster.connectPubSub(new ByteArrayCodec());
+                c.addListener(listener);
+                return c;
+              });
       log.info("l2cache和redis创建订阅关系，订阅频道【{}】", Arrays.toString(channels));
-      connection.sync().subscribe(channels);
-      connection.addListener(messageListener);
+      connection.sync().subscribe(toBytes(channels));
     } catch (SerializationException e) {
       throw e;
     } catch (Exception e) {
       throw new RedisClientException(e.getMessage(), e);
     }
   }
+
+  @Override
+  public void unsubscribe(RedisMessageListener messageListener, String... channels) {
+    StatefulRedisPubSubConnection<byte[], byte[]> connection = subscriptions.get(messageListener);
+    if (connection == null) {
+      return;
+    }
+    try {
+      log.info("l2cache取消订阅频道【{}】", Arrays.toString(channels));
+      connection.sync().unsubscribe(toBytes(channels));
+    } catch (Exception e) {
+      throw new RedisClientException(e.getMessage(), e);
+    }
+  }
+
+  private static byte[][] toBytes(String... channels) {
+    return Arrays.stream(channels)
+        .map(channel -> channel.getBytes(StandardCharsets.UTF_8))
+        .toArray(byte[][]::new);
+  }
 }
@@ -0,0 +1,68 @@
+package com.github.gobars.l2cache.core.redis.client;
+
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 多条多路复用的数据连接，按线程选择连接，同一个线程的命令总在同一条连接上按顺序执行
+ *
+ * @author bingoohuang
+ */
+final class RedisConnections<C> {
+  private final List<C> connections;
+
+  /**
+   * @param size 连接数
+   * @param connector 创建一条连接
+   */
+  RedisConnections(int size, Supplier<C> connector) {
+    List<C> list = new ArrayList<>(Math.max(1, size));
+    for (int i = 0; i < Math.max(1, size); i++) {
+      list.add(connector.get());
+    }
+    this.connections = Collections.unmodifiableList(list);
+  }
+
+  /**
+   * 当前线程使用的连接
+   *
+   * @return 连接
+   */
+  C get() {
+    if (connections.size() == 1) {
+      return connections.get(0);
+    }
+    return connections.get((int) (Thread.currentThread().getId() % connections.size()));
+  }
+
+  /**
+   * 所有连接
+   *
+   * @return 连接列表
+   */
+  List<C> all() {
+    return connections;
+  }
+
+  /**
+   * 根据配置创建Lettuce的I/O和计算线程池，没有配置的使用Lettuce的默认值(CPU核数)
+   *
+   * @param properties redis配置
+   * @return {@link ClientResources}
+   */
+  static ClientResources resources(RedisProperties properties) {
+    DefaultClientResources.Builder builder = DefaultClientResources.builder();
+    if (properties.getIoThreads() != null && properties.getIoThreads() > 0) {
+      builder.ioThreadPoolSize(properties.getIoThreads());
+    }
+    if (properties.getComputationThreads() != null && properties.getComputationThreads() > 0) {
+      builder.computationThreadPoolSize(properties.getComputationThreads());
+    }
+    return builder.build();
+  }
+}
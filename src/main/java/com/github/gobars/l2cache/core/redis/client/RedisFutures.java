@@ -0,0 +1,53 @@
+package com.github.gobars.l2cache.core.redis.client;
+
+import com.github.gobars.l2cache.core.redis.serializer.SerializationException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * 将Lettuce的异步结果转换成{@link CompletableFuture}，并保持和同步接口一致的异常类型
+ *
+ * @author bingoohuang
+ */
+final class RedisFutures {
+  private RedisFutures() {}
+
+  /**
+   * 转换异步结果
+   *
+   * @param stage Lettuce 返回的 RedisFuture
+   * @param mapper 结果转换（如反序列化），在完成回调中执行
+   * @param <V> 原始结果类型
+   * @param <R> 转换后的类型
+   * @return {@link CompletableFuture}
+   */
+  static <V, R> CompletableFuture<R> toFuture(CompletionStage<V> stage, Function<V, R> mapper) {
+    CompletableFuture<R> f = new CompletableFuture<>();
+    stage.whenComplete(
+        (v, e) -> {
+          if (e != null) {
+            f.completeExceptionally(wrap(e));
+            return;
+          }
+
+          try {
+            f.complete(mapper.apply(v));
+          } catch (Exception ex) {
+            f.completeExceptionally(wrap(ex));
+          }
+        });
+    return f;
+  }
+
+  private static Throwable wrap(Throwable e) {
+    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    if (cause instanceof SerializationException || cause instanceof RedisClientException) {
+      return cause;
+    }
+
+    return new RedisClientException(cause.getMessage(), cause);
+  }
+}
@@ -0,0 +1,33 @@
+package com.github.gobars.l2cache.core.redis.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 一次网络往返读取到的value及其剩余生存时间
+ *
+ * @author bingoohuang
+ */
+@Getter
+@AllArgsConstructor
+public class RedisValue {
+  /** PTTL 返回 -2 表示key不存在 */
+  public static final long TTL_NOT_EXISTS = -2;
+
+  /** 反序列化后的值 */
+  private final Object value;
+
+  /** 剩余生存时间(毫秒)，-1 表示没有设置过期时间，-2 表示key不存在 */
+  private final long ttlMs;
+
+  /**
+   * key是否存在
+   *
+   * <p>GET和PTTL不是原子执行的，value不为NULL时即便key在两个命令之间过期也认为存在
+   *
+   * @return true OR false
+   */
+  public boolean exists() {
+    return value != null || ttlMs != TTL_NOT_EXISTS;
+  }
+}
@@ -0,0 +1,69 @@
+package com.github.gobars.l2cache.core.redis.client;
+
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.XAddArgs;
+import io.lettuce.core.XReadArgs;
+import io.lettuce.core.api.sync.RedisStreamCommands;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单机和集群共用的stream命令，每条消息只有一个字段
+ *
+ * @author bingoohuang
+ */
+final class StreamCommands {
+  /** 消息内容的字段名 */
+  private static final byte[] FIELD = {'m'};
+
+  private StreamCommands() {}
+
+  static String xadd(
+      RedisStreamCommands<byte[], byte[]> sync, String key, byte[] message, long maxLen) {
+    XAddArgs args = XAddArgs.Builder.maxlen(maxLen).approximateTrimming();
+    return sync.xadd(key.getBytes(StandardCharsets.UTF_8), args, FIELD, message);
+  }
+
+  @SuppressWarnings("unchecked")
+  static List<StreamEntry> xread(
+      RedisStreamCommands<byte[], byte[]> sync,
+      String key,
+      String lastId,
+      int count,
+      long blockMs) {
+    List<StreamMessage<byte[], byte[]>> messages =
+        sync.xread(
+            XReadArgs.Builder.block(blockMs).count(count),
+            XReadArgs.StreamOffset.from(key.getBytes(StandardCharsets.UTF_8), lastId));
+    if (messages == null || messages.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    List<StreamEntry> entries = new ArrayList<>(messages.size());
+    for (StreamMessage<byte[], byte[]> message : messages) {
+      // byte[]作为map的key不能按内容查找，只有一个字段，直接取第一个值
+      byte[] body = message.getBody().values().iterator().next();
+      entries.add(new StreamEntry(message.getId(), body));
+    }
+    return entries;
+  }
+
+  static String firstId(RedisStreamCommands<byte[], byte[]> sync, String key) {
+    byte[] bkey = key.getBytes(StandardCharsets.UTF_8);
+    return idOf(sync.xrange(bkey, Range.unbounded(), Limit.from(1)));
+  }
+
+  static String lastId(RedisStreamCommands<byte[], byte[]> sync, String key) {
+    byte[] bkey = key.getBytes(StandardCharsets.UTF_8);
+    return idOf(sync.xrevrange(bkey, Range.unbounded(), Limit.from(1)));
+  }
+
+  private static String idOf(List<StreamMessage<byte[], byte[]>> messages) {
+    return messages == null || messages.isEmpty() ? null : messages.get(0).getId();
+  }
+}
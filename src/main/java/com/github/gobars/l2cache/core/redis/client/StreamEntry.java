@@ -0,0 +1,19 @@
+package com.github.gobars.l2cache.core.redis.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * redis stream中的一条消息
+ *
+ * @author bingoohuang
+ */
+@Data
+@AllArgsConstructor
+public class StreamEntry {
+  /** 消息ID，格式是 毫秒时间戳-序号 */
+  private String id;
+
+  /** 消息内容 */
+  private byte[] message;
+}
@@ -3,6 +3,7 @@ package com.github.gobars.l2cache.core.redis.serializer;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.parser.ParserConfig;
 import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.github.gobars.l2cache.core.support.NullValue;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -13,8 +14,24 @@ public class JsonRedisSerializer implements RedisSerializer<Object> {
     // ParserConfig.getGlobalInstance().setAutoTypeSupport(true);
   }
 
+  /** NULL值是否写成一字节标记，老版本只能解析JSON格式的NULL值，滚动升级期间需要关闭 */
+  private final boolean compactNullValue;
+
+  /** NULL值写成JSON，和老版本兼容 */
+  public JsonRedisSerializer() {
+    this(false);
+  }
+
+  /** @param compactNullValue NULL值是否写成一字节标记，所有节点都能读取后再打开 */
+  public JsonRedisSerializer(boolean compactNullValue) {
+    this.compactNullValue = compactNullValue;
+  }
+
   @Override
   public byte[] serialize(java.lang.Object t) throws SerializationException {
+    if (compactNullValue && t instanceof NullValue) {
+      return SerializationUtils.NULL_VALUE;
+    }
 
     try {
       return JSON.toJSONBytes(t, SerializerFeature.WriteClassName);
@@ -30,6 +47,10 @@ public class JsonRedisSerializer implements RedisSerializer<Object> {
     if (SerializationUtils.isEmpty(bytes)) {
       return null;
     }
+    // 一字节标记和JSON格式的NULL值都能读取
+    if (SerializationUtils.isNullValue(bytes)) {
+      return NullValue.INSTANCE;
+    }
 
     try {
       return JSON.parse(bytes);
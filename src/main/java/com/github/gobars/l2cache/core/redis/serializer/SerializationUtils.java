@@ -8,7 +8,14 @@ package com.github.gobars.l2cache.core.redis.serializer;
 public abstract class SerializationUtils {
   static final byte[] EMPTY_ARRAY = new byte[0];
 
+  /** NULL值在redis中的一字节标记，JSON不会以0x00开头，不会和正常数据冲突 */
+  static final byte[] NULL_VALUE = {0};
+
   static boolean isEmpty(byte[] data) {
     return (data == null || data.length == 0);
   }
+
+  static boolean isNullValue(byte[] data) {
+    return data != null && data.length == 1 && data[0] == NULL_VALUE[0];
+  }
 }
@@ -0,0 +1,24 @@
+package com.github.gobars.l2cache.core.setting;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 布隆过滤器配置项
+ *
+ * @author bingoohuang
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BloomSetting {
+  /** 预计插入的key数量 */
+  private long expectedInsertions = 1000000;
+
+  /** 期望的误判率 */
+  private double fpp = 0.01;
+
+  /** 本地位数组从redis增量刷新的间隔时间 */
+  private int refreshSecs = 30;
+}
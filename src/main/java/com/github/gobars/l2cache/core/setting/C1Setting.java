@@ -1,6 +1,6 @@
 package com.github.gobars.l2cache.core.setting;
 
-import lombok.AllArgsConstructor;
+import com.github.gobars.l2cache.core.support.SizeEstimator;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -11,7 +11,6 @@ import lombok.NoArgsConstructor;
  */
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class C1Setting {
 
   /** 缓存初始Size */
@@ -22,4 +21,33 @@ public class C1Setting {
 
   /** 缓存有效时间 */
   private int expireSecs = 0;
+
+  /** 写入多久之后在访问时从L2异步刷新，0表示不刷新，需要小于expireSecs才有效 */
+  private int refreshSecs = 0;
+
+  /** NULL值的有效时间，0表示和expireSecs相同 */
+  private int nullExpireSecs = 0;
+
+  /** NULL值区域的最大Size，和正常数据分开计算 */
+  private int nullMaxSize = 1000;
+
+  /** 是否把缓存值序列化后存放在堆外内存 */
+  private boolean offHeap = false;
+
+  /** L1容量(字节)，大于0时按缓存值大小限制容量，maxSize不生效；堆外模式下0表示使用默认值 */
+  private long maxBytes = 0;
+
+  /** 按字节限制容量时估算缓存值大小，为NULL时使用序列化后的字节数，不参与JSON序列化 */
+  private transient SizeEstimator sizeEstimator;
+
+  /**
+   * @param initCap 缓存初始Size
+   * @param maxSize 缓存最大Size
+   * @param expireSecs 缓存有效时间
+   */
+  public C1Setting(int initCap, int maxSize, int expireSecs) {
+    this.initCap = initCap;
+    this.maxSize = maxSize;
+    this.expireSecs = expireSecs;
+  }
 }
@@ -14,6 +14,9 @@ public class C2Setting {
   /** 缓存有效时间 */
   private long expireSecs = 0;
 
+  /** NULL值的有效时间，0表示和expireSecs相同 */
+  private long nullExpireSecs = 0;
+
   /** 缓存主动在失效前强制刷新缓存的时间 */
   private long preloadSecs = 0;
 
@@ -23,6 +26,15 @@ public class C2Setting {
   /** 是否使用缓存名称作为 redis key 前缀 */
   private boolean usePrefix = true;
 
+  /** 主动刷新策略 */
+  private RefreshPolicy refreshPolicy = RefreshPolicy.PRELOAD_WINDOW;
+
+  /** XFetch刷新策略的系数 */
+  private double refreshBeta = 1.0;
+
+  /** 清空缓存时是否只把缓存的代数加1，不扫描删除key，需要使用缓存前缀并且有过期时间 */
+  private boolean generationClear = false;
+
   /**
    * @param expireSecs 缓存有效时间
    * @param preloadSecs 缓存刷新时间
@@ -23,6 +23,9 @@ public class L2Setting {
   /** L2配置 */
   private C2Setting c2Setting;
 
+  /** 布隆过滤器配置，为null时不开启 */
+  private BloomSetting bloomSetting;
+
   public L2Setting(C1Setting c1Setting, C2Setting c2Setting, String desc) {
     this.c1Setting = c1Setting;
     this.c2Setting = c2Setting;
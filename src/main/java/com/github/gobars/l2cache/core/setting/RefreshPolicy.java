@@ -0,0 +1,79 @@
+package com.github.gobars.l2cache.core.setting;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * L2缓存主动刷新策略
+ *
+ * @author bingoohuang
+ */
+public enum RefreshPolicy {
+  /** 剩余生存时间进入preloadSecs窗口后，每次请求都触发刷新 */
+  PRELOAD_WINDOW("固定刷新窗口") {
+    @Override
+    public boolean shouldRefresh(
+        long ttlMs, long preloadMs, long loadCostMs, double beta, double rand) {
+      return ttlMs > 0 && ttlMs <= preloadMs;
+    }
+  },
+
+  /**
+   * XFetch概率提前刷新，每次请求以 {@code -loadCost * beta * ln(rand()) >= ttl} 判断是否刷新
+   *
+   * <p>越接近过期、回源越慢、请求越多的key越早被刷新，各节点的刷新时间自然错开。本节点还没有回源耗时记录时退化为{@link #PRELOAD_WINDOW}
+   *
+   * <p>see: Optimal Probabilistic Cache Stampede Prevention, VLDB 2015
+   */
+  XFETCH("概率提前刷新") {
+    @Override
+    public boolean shouldRefresh(
+        long ttlMs, long preloadMs, long loadCostMs, double beta, double rand) {
+      if (ttlMs <= 0) {
+        return false;
+      }
+      if (loadCostMs <= 0) {
+        return PRELOAD_WINDOW.shouldRefresh(ttlMs, preloadMs, loadCostMs, beta, rand);
+      }
+
+      return -loadCostMs * beta * Math.log(rand) >= ttlMs;
+    }
+  };
+
+  private final String label;
+
+  RefreshPolicy(String label) {
+    this.label = label;
+  }
+
+  public String getLabel() {
+    return label;
+  }
+
+  /**
+   * 判断本次请求是否需要刷新缓存
+   *
+   * @param ttlMs 剩余生存时间(毫秒)
+   * @param preloadMs 配置的主动刷新时间(毫秒)
+   * @param loadCostMs 被缓存方法的平均耗时(毫秒)
+   * @param beta XFetch的系数，大于1倾向更早刷新，小于1倾向更晚刷新
+   * @return true OR false
+   */
+  public boolean shouldRefresh(long ttlMs, long preloadMs, long loadCostMs, double beta) {
+    // 1 - nextDouble() 的范围是 (0, 1]，避免 ln(0)
+    double rand = 1 - ThreadLocalRandom.current().nextDouble();
+    return shouldRefresh(ttlMs, preloadMs, loadCostMs, beta, rand);
+  }
+
+  /**
+   * 使用指定的随机数判断本次请求是否需要刷新缓存
+   *
+   * @param ttlMs 剩余生存时间(毫秒)
+   * @param preloadMs 配置的主动刷新时间(毫秒)
+   * @param loadCostMs 被缓存方法的平均耗时(毫秒)
+   * @param beta XFetch的系数，大于1倾向更早刷新，小于1倾向更晚刷新
+   * @param rand (0, 1]范围内的随机数
+   * @return true OR false
+   */
+  public abstract boolean shouldRefresh(
+      long ttlMs, long preloadMs, long loadCostMs, double beta, double rand);
+}
@@ -0,0 +1,163 @@
+package com.github.gobars.l2cache.core.snapshot;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * L1快照文件，停机时保存热点数据和剩余有效时间，启动时重新加载，避免发布后L1冷启动导致L2流量翻倍
+ *
+ * <p>每个缓存一个文件，通过内存映射读写，格式：
+ *
+ * <pre>
+ * int 魔数, int 版本, long 保存时间,
+ * int+bytes 缓存名称, int+bytes 缓存配置(JSON), int 条数,
+ * 每条: int+bytes key, long 过期时间点(毫秒), int+bytes 序列化后的值
+ * </pre>
+ *
+ * @author bingoohuang
+ */
+@Slf4j
+public class L1Snapshot {
+  /** 快照文件后缀 */
+  public static final String SUFFIX = ".l1snap";
+
+  private static final int MAGIC = 0x4C324331;
+  private static final int VERSION = 1;
+
+  /** 缓存名称 */
+  @Getter private final String cacheName;
+
+  /** 缓存配置(JSON) */
+  @Getter private final String setting;
+
+  /** 保存时间 */
+  @Getter private final long savedAt;
+
+  /** 快照数据 */
+  @Getter private final List<Entry> entries;
+
+  public L1Snapshot(String cacheName, String setting, long savedAt, List<Entry> entries) {
+    this.cacheName = cacheName;
+    this.setting = setting;
+    this.savedAt = savedAt;
+    this.entries = entries;
+  }
+
+  /**
+   * 写入快照文件，先写临时文件再改名，避免停机过程中被打断留下不完整的文件
+   *
+   * @param dir 快照目录
+   * @param internalKey 缓存的内部Key
+   * @throws IOException 写文件异常
+   */
+  public void write(Path dir, String internalKey) throws IOException {
+    byte[] name = cacheName.getBytes(StandardCharsets.UTF_8);
+    byte[] settingBytes = setting.getBytes(StandardCharsets.UTF_8);
+    long size = 4 + 4 + 8 + 4 + name.length + 4 + settingBytes.length + 4;
+    for (Entry e : entries) {
+      size += 4 + e.key.length + 8 + 4 + e.value.length;
+    }
+
+    Files.createDirectories(dir);
+    Path file = dir.resolve(fileName(cacheName, internalKey));
+    Path tmp = dir.resolve(file.getFileName() + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            tmp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buf.putInt(MAGIC).putInt(VERSION).putLong(savedAt);
+      buf.putInt(name.length).put(name);
+      buf.putInt(settingBytes.length).put(settingBytes);
+      buf.putInt(entries.size());
+      for (Entry e : entries) {
+        buf.putInt(e.key.length).put(e.key).putLong(e.expireAt);
+        buf.putInt(e.value.length).put(e.value);
+      }
+      buf.force();
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * 读取快照文件
+   *
+   * @param file 快照文件
+   * @return {@link L1Snapshot}，文件格式不正确时返回null
+   * @throws IOException 读文件异常
+   */
+  public static L1Snapshot read(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buf.remaining() < 8 || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+        log.warn("L1快照文件 {} 格式不正确，忽略", file);
+        return null;
+      }
+
+      long savedAt = buf.getLong();
+      String cacheName = new String(bytes(buf), StandardCharsets.UTF_8);
+      String setting = new String(bytes(buf), StandardCharsets.UTF_8);
+      int count = buf.getInt();
+      List<Entry> entries = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        byte[] key = bytes(buf);
+        long expireAt = buf.getLong();
+        entries.add(new Entry(key, expireAt, bytes(buf)));
+      }
+      return new L1Snapshot(cacheName, setting, savedAt, entries);
+    }
+  }
+
+  private static byte[] bytes(MappedByteBuffer buf) {
+    byte[] bytes = new byte[buf.getInt()];
+    buf.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * 快照文件名，缓存名称中可能有不能出现在文件名中的字符，需要编码
+   *
+   * @param cacheName 缓存名称
+   * @param internalKey 缓存的内部Key
+   * @return 文件名
+   */
+  static String fileName(String cacheName, String internalKey) {
+    try {
+      return URLEncoder.encode(cacheName, "UTF-8") + "." + internalKey + SUFFIX;
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** 一条快照数据 */
+  @Getter
+  @AllArgsConstructor
+  public static class Entry {
+    /** 缓存key(UTF-8) */
+    private final byte[] key;
+
+    /** 过期时间点(毫秒) */
+    private final long expireAt;
+
+    /** 序列化后的缓存值 */
+    private final byte[] value;
+
+    public String getKeyString() {
+      return new String(key, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package com.github.gobars.l2cache.core.snapshot;
+
+import com.alibaba.fastjson.JSON;
+import com.github.gobars.l2cache.core.cache.Cache;
+import com.github.gobars.l2cache.core.cache.CaffeineCache;
+import com.github.gobars.l2cache.core.cache.L2Cache;
+import com.github.gobars.l2cache.core.cache.RedisCache;
+import com.github.gobars.l2cache.core.cache.RedisCacheKey;
+import com.github.gobars.l2cache.core.manager.AbstractCacheManager;
+import com.github.gobars.l2cache.core.redis.serializer.RedisSerializer;
+import com.github.gobars.l2cache.core.setting.L2Setting;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * L1快照服务，停机时保存所有 {@link CaffeineCache} 的热点数据，启动时在后台恢复
+ *
+ * @author bingoohuang
+ */
+@Slf4j
+public class L1SnapshotService {
+  /** 校验快照数据时每次MGET的key个数 */
+  private static final int VALIDATE_BATCH = 500;
+
+  /** 快照目录 */
+  private final Path dir;
+
+  /** 缓存管理器 */
+  private final AbstractCacheManager cacheManager;
+
+  public L1SnapshotService(Path dir, AbstractCacheManager cacheManager) {
+    this.dir = dir;
+    this.cacheManager = cacheManager;
+  }
+
+  /** 保存所有L1的快照，单个缓存保存失败不影响其他缓存 */
+  public void save() {
+    RedisSerializer<Object> serializer = cacheManager.getRedisClient().getValueSerializer();
+    long now = System.currentTimeMillis();
+    for (Map.Entry<String, ConcurrentMap<String, Cache>> names :
+        cacheManager.getCacheContainer().entrySet()) {
+      for (Cache cache : names.getValue().values()) {
+        if (!isCaffeineL1(cache)) {
+          continue;
+        }
+
+        L2Setting setting = ((L2Cache) cache).getL2Setting();
+        CaffeineCache l1 = (CaffeineCache) ((L2Cache) cache).getCache1();
+        try {
+          List<L1Snapshot.Entry> entries = l1.snapshot(serializer);
+          new L1Snapshot(names.getKey(), JSON.toJSONString(setting), now, entries)
+              .write(dir, setting.getInternalKey());
+          log.info("保存L1快照 {}，条数={}", names.getKey(), entries.size());
+        } catch (Exception e) {
+          log.warn("保存L1快照 {} 异常：{}", names.getKey(), e.getMessage(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * 加载快照目录下所有快照，按快照中的配置创建缓存并恢复L1，加载后删除快照文件
+   *
+   * <p>缓存在加载前创建，加载期间收到的删除通知会记录下来，对应的key不再恢复。
+   * 停机期间发布的删除通知收不到，恢复前每 {@link #VALIDATE_BATCH} 条用一次MGET和L2比较，
+   * L2中已经不存在或者值已经变化的数据不恢复
+   */
+  public void load() {
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+
+    RedisSerializer<Object> serializer = cacheManager.getRedisClient().getValueSerializer();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + L1Snapshot.SUFFIX)) {
+      for (Path file : files) {
+        try {
+          load(file, serializer);
+        } catch (Exception e) {
+          log.warn("加载L1快照 {} 异常：{}", file, e.getMessage(), e);
+        } finally {
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (IOException e) {
+      log.warn("读取L1快照目录 {} 异常：{}", dir, e.getMessage(), e);
+    }
+  }
+
+  private void load(Path file, RedisSerializer<Object> serializer) throws IOException {
+    long start = System.currentTimeMillis();
+    L1Snapshot snapshot = L1Snapshot.read(file);
+    if (snapshot == null) {
+      return;
+    }
+
+    L2Setting setting = JSON.parseObject(snapshot.getSetting(), L2Setting.class);
+    Cache cache = cacheManager.getCache(snapshot.getCacheName(), setting);
+    if (!isCaffeineL1(cache)) {
+      return;
+    }
+
+    L2Cache l2Cache = (L2Cache) cache;
+    int restored =
+        ((CaffeineCache) l2Cache.getCache1())
+            .restore(
+                snapshot.getEntries(),
+                serializer,
+                entries -> validate(l2Cache, entries, serializer));
+    log.info(
+        "恢复L1快照 {}，快照条数={}，校验后恢复条数={}，停机时长={}ms，耗时={}ms",
+        snapshot.getCacheName(),
+        snapshot.getEntries().size(),
+        restored,
+        start - snapshot.getSavedAt(),
+        System.currentTimeMillis() - start);
+  }
+
+  /**
+   * 用L2校验快照数据，只保留L2中序列化后的值和快照完全相同的数据
+   *
+   * @param cache 多级缓存
+   * @param entries 快照数据
+   * @param serializer 缓存值的序列化方式
+   * @return 仍然有效的快照数据，保持原来的顺序
+   */
+  private List<L1Snapshot.Entry> validate(
+      L2Cache cache, List<L1Snapshot.Entry> entries, RedisSerializer<Object> serializer) {
+    if (!(cache.getCache2() instanceof RedisCache)) {
+      return entries;
+    }
+
+    RedisCache redisCache = (RedisCache) cache.getCache2();
+    // 按代数清空的缓存L1的key带代数前缀，老代数的数据已经被清空
+    long generation = cache.generation();
+    String prefix = generation == 0 ? "" : RedisCacheKey.generationPrefix(generation);
+    List<L1Snapshot.Entry> valid = new ArrayList<>(entries.size());
+    List<L1Snapshot.Entry> batch = new ArrayList<>(VALIDATE_BATCH);
+    List<String> redisKeys = new ArrayList<>(VALIDATE_BATCH);
+    for (int i = 0; i < entries.size(); i++) {
+      L1Snapshot.Entry e = entries.get(i);
+      String key = e.getKeyString();
+      if (key.startsWith(prefix)) {
+        batch.add(e);
+        redisKeys.add(redisCache.getRedisCacheKey(key.substring(prefix.length())).getKey());
+      }
+      if (batch.size() >= VALIDATE_BATCH || (i == entries.size() - 1 && !batch.isEmpty())) {
+        List<Object> values = cacheManager.getRedisClient().mget(redisKeys);
+        for (int j = 0; j < batch.size(); j++) {
+          Object value = values.get(j);
+          L1Snapshot.Entry entry = batch.get(j);
+          if (value != null && Arrays.equals(serializer.serialize(value), entry.getValue())) {
+            valid.add(entry);
+          }
+        }
+        batch.clear();
+        redisKeys.clear();
+      }
+    }
+    return valid;
+  }
+
+  private static boolean isCaffeineL1(Cache cache) {
+    return cache instanceof L2Cache && ((L2Cache) cache).getCache1() instanceof CaffeineCache;
+  }
+}
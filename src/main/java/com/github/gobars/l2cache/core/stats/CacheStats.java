@@ -10,6 +10,9 @@ import java.util.concurrent.atomic.LongAdder;
  * @author yuhao.wang3
  */
 public final class CacheStats {
+  /** 耗时平均值的平滑系数 */
+  private static final double EWMA_ALPHA = 0.2;
+
   /** 请求缓存总数 */
   @Getter private final LongAdder requestCount = new LongAdder();
 
@@ -19,6 +22,9 @@ public final class CacheStats {
   /** 请求被缓存方法总耗时(毫秒) */
   @Getter private final LongAdder cachedRequestTime = new LongAdder();
 
+  /** 被缓存方法耗时的指数加权平均值(毫秒)，不随统计周期清零，并发更新时允许丢失个别样本 */
+  private volatile double loadTimeEwma;
+
   /**
    * 自增请求缓存总数
    *
@@ -46,6 +52,25 @@ public final class CacheStats {
     cachedRequestTime.add(time);
   }
 
+  /**
+   * 记录一次被缓存方法的耗时，不受是否开启统计影响
+   *
+   * @param time 耗时(毫秒)
+   */
+  public void recordLoadTime(long time) {
+    double old = loadTimeEwma;
+    loadTimeEwma = old == 0 ? time : old + EWMA_ALPHA * (time - old);
+  }
+
+  /**
+   * 被缓存方法耗时的指数加权平均值(毫秒)
+   *
+   * @return 没有记录时返回0
+   */
+  public long getLoadTimeEwma() {
+    return Math.round(loadTimeEwma);
+  }
+
   public long getAndResetRequestCount() {
     long lodValue = requestCount.longValue();
     requestCount.reset();
@@ -45,6 +45,12 @@ public class CacheStatsInfo {
   /** 总的请求时间 */
   private long totalLoadTime;
 
+  /** 布隆过滤器拒绝的请求总数 */
+  private long bloomRejectCount;
+
+  /** 布隆过滤器当前估算的误判率，没有开启时为0 */
+  private double bloomFpp;
+
   /** 缓存配置 */
   private L2Setting l2Setting;
 
@@ -81,5 +87,6 @@ public class CacheStatsInfo {
     this.setL1MissCount(0);
     this.setL2RequestCount(0);
     this.setL2MissCount(0);
+    this.setBloomRejectCount(0);
   }
 }
@@ -1,9 +1,12 @@
 package com.github.gobars.l2cache.core.stats;
 
 import com.alibaba.fastjson.JSON;
+import com.github.gobars.l2cache.core.bloom.BloomFilter;
 import com.github.gobars.l2cache.core.cache.Cache;
 import com.github.gobars.l2cache.core.cache.L2Cache;
+import com.github.gobars.l2cache.core.listener.RedisMessageListener;
 import com.github.gobars.l2cache.core.manager.AbstractCacheManager;
+import com.github.gobars.l2cache.core.redis.client.CommandBatchStats;
 import com.github.gobars.l2cache.core.redis.client.RedisClient;
 import com.github.gobars.l2cache.core.setting.L2Setting;
 import com.github.gobars.l2cache.core.support.RedisLock;
@@ -107,6 +110,23 @@ public class StatsService {
 
     log.debug("执行缓存统计数据采集定时任务");
     for (AbstractCacheManager cm : AbstractCacheManager.getCacheManager()) {
+      RedisMessageListener listener = cm.getMessageListener();
+      log.info(
+          "l2cache 删除消息排队{}条，最长等待{}ms，累计丢弃{}条",
+          listener.queueSize(),
+          listener.getAndResetMaxLagMs(),
+          listener.getRejectedCount());
+      CommandBatchStats batchStats = cm.getRedisClient().getCommandBatchStats();
+      if (batchStats != null) {
+        log.info(
+            "l2cache 写命令合并发送{}批{}条，平均每批{}条，最大{}条，平均等待{}us，最长{}us",
+            batchStats.getBatches(),
+            batchStats.getCommands(),
+            String.format("%.1f", batchStats.getAvgBatchSize()),
+            batchStats.getMaxBatchSize(),
+            batchStats.getAvgFlushLatencyMicros(),
+            batchStats.getMaxFlushLatencyMicros());
+      }
       for (String cacheName : cm.getCacheNames()) {
         for (Cache cache : cm.getCache(cacheName)) {
           syncCacheStats(redisClient, cacheName, (L2Cache) cache);
@@ -168,6 +188,12 @@ public class StatsService {
     old.setL2RequestCount(old.getL2RequestCount() + cache2Stats.getAndResetRequestCount());
     old.setL2MissCount(old.getL2MissCount() + cache2Stats.getAndResetCachedRequestCount());
 
+    BloomFilter bloomFilter = l2Cache.getBloomFilter();
+    if (bloomFilter != null) {
+      old.setBloomRejectCount(old.getBloomRejectCount() + bloomFilter.getAndResetRejectCount());
+      old.setBloomFpp(bloomFilter.expectedFpp());
+    }
+
     // 将缓存统计数据写到redis
     redisClient.set(redisKey, old, 24, TimeUnit.HOURS);
 
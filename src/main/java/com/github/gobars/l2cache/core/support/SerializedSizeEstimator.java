@@ -0,0 +1,22 @@
+package com.github.gobars.l2cache.core.support;
+
+import com.github.gobars.l2cache.core.redis.serializer.RedisSerializer;
+import lombok.AllArgsConstructor;
+
+/**
+ * 以序列化后的字节数作为缓存值的大小，和缓存值在L2中占用的空间一致
+ *
+ * <p>每次写入L1都会序列化一次，对象越大估算越准确，小对象的对象头等开销没有计算在内
+ *
+ * @author bingoohuang
+ */
+@AllArgsConstructor
+public class SerializedSizeEstimator implements SizeEstimator {
+  private final RedisSerializer<Object> serializer;
+
+  @Override
+  public int estimate(Object value) {
+    byte[] bytes = serializer.serialize(value);
+    return bytes == null ? 0 : bytes.length;
+  }
+}
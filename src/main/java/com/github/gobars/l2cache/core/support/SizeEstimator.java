@@ -0,0 +1,19 @@
+package com.github.gobars.l2cache.core.support;
+
+/**
+ * 估算缓存值占用的字节数，L1按字节数限制容量时使用
+ *
+ * <p>实现类需要有无参构造方法，才能在 {@code @L1(sizeEstimator)} 中使用
+ *
+ * @author bingoohuang
+ */
+@FunctionalInterface
+public interface SizeEstimator {
+  /**
+   * 估算缓存值占用的字节数
+   *
+   * @param value 缓存值，不会是null
+   * @return 字节数
+   */
+  int estimate(Object value);
+}
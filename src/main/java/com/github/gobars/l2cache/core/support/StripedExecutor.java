@@ -0,0 +1,162 @@
+package com.github.gobars.l2cache.core.support;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 按key分段的有界线程池，同一个key的任务在同一个线程上按提交顺序执行
+ *
+ * <p>提交任务从不阻塞调用线程。队列满时丢弃任务并记下key，执行线程空出来后对这些key调用溢出处理方法，
+ * 由调用方决定丢了任务之后怎么补救
+ *
+ * @author bingoohuang
+ */
+@Slf4j
+public class StripedExecutor {
+  /** 执行线程没有任务时检查溢出key的间隔(毫秒) */
+  private static final long POLL_MS = 100;
+
+  private final Stripe[] stripes;
+
+  /** 队列满时丢弃任务的key的处理方法，在执行线程上调用 */
+  private final Consumer<String> overflowHandler;
+
+  /** 丢弃的任务数 */
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  /** 任务从提交到开始执行的最长等待时间(毫秒) */
+  private final AtomicLong maxLagMs = new AtomicLong();
+
+  private volatile boolean running = true;
+
+  /**
+   * @param name 线程名称前缀
+   * @param stripeCount 分段数，也是线程数
+   * @param queueCapacity 每个分段的队列长度
+   * @param overflowHandler 队列满时丢弃任务的key的处理方法
+   */
+  public StripedExecutor(
+      String name, int stripeCount, int queueCapacity, Consumer<String> overflowHandler) {
+    this.overflowHandler = overflowHandler;
+    this.stripes = new Stripe[Math.max(1, stripeCount)];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new Stripe(Math.max(1, queueCapacity));
+      Thread thread = new Thread(stripes[i]::run, name + "-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * 提交任务，不阻塞
+   *
+   * @param key 分段的key，同一个key的任务按提交顺序执行
+   * @param task 任务
+   * @return 是否提交成功，队列满时返回false，执行线程稍后会对这个key调用溢出处理方法
+   */
+  public boolean execute(String key, Runnable task) {
+    Stripe stripe = stripes[(key.hashCode() & 0x7FFFFFFF) % stripes.length];
+    if (stripe.queue.offer(new Task(task))) {
+      return true;
+    }
+
+    rejectedCount.incrementAndGet();
+    stripe.overflowKeys.add(key);
+    return false;
+  }
+
+  /**
+   * 所有分段排队中的任务数
+   *
+   * @return 任务数
+   */
+  public int queueSize() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      size += stripe.queue.size();
+    }
+    return size;
+  }
+
+  /**
+   * 丢弃的任务数
+   *
+   * @return 任务数
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * 上次调用以来任务从提交到开始执行的最长等待时间
+   *
+   * @return 等待时间(毫秒)
+   */
+  public long getAndResetMaxLagMs() {
+    return maxLagMs.getAndSet(0);
+  }
+
+  /** 停止所有执行线程，排队中的任务不再执行 */
+  public void shutdown() {
+    running = false;
+  }
+
+  private static class Task {
+    private final Runnable runnable;
+    private final long submitTime = System.currentTimeMillis();
+
+    private Task(Runnable runnable) {
+      this.runnable = runnable;
+    }
+  }
+
+  private class Stripe {
+    private final BlockingQueue<Task> queue;
+
+    /** 队列满时丢弃了任务的key */
+    private final Set<String> overflowKeys = ConcurrentHashMap.newKeySet();
+
+    private Stripe(int queueCapacity) {
+      this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    private void run() {
+      while (running) {
+        try {
+          drainOverflow();
+          Task task = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+          if (task == null) {
+            continue;
+          }
+
+          long lag = System.currentTimeMillis() - task.submitTime;
+          maxLagMs.accumulateAndGet(lag, Math::max);
+          task.runnable.run();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        } catch (Exception e) {
+          log.error("l2cache 执行任务异常：{}", e.getMessage(), e);
+        }
+      }
+    }
+
+    private void drainOverflow() {
+      if (overflowKeys.isEmpty()) {
+        return;
+      }
+
+      for (String key : overflowKeys) {
+        overflowKeys.remove(key);
+        overflowHandler.accept(key);
+      }
+    }
+  }
+}
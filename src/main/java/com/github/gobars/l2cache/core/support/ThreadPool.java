@@ -1,6 +1,10 @@
 package com.github.gobars.l2cache.core.support;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
 
 /**
  * 线程池
@@ -9,6 +13,7 @@ import java.util.concurrent.ThreadPoolExecutor;
  */
 public class ThreadPool {
   private static MdcThreadPoolTaskExecutor pool;
+  private static MdcThreadPoolTaskExecutor asyncPool;
 
   static {
     pool = new MdcThreadPoolTaskExecutor();
@@ -31,13 +36,50 @@ public class ThreadPool {
     pool.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
 
     pool.initialize();
+
+    asyncPool = new MdcThreadPoolTaskExecutor();
+    asyncPool.setCorePoolSize(8);
+    asyncPool.setMaxPoolSize(64);
+    asyncPool.setQueueCapacity(1000);
+    asyncPool.setKeepAliveSeconds(120);
+    asyncPool.setThreadNamePrefix("l2cache-async");
+    // 异步回源不能静默丢弃任务，否则调用方拿到的future永远不会完成
+    asyncPool.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+    asyncPool.initialize();
   }
 
   public static void run(Runnable runnable) {
     pool.execute(runnable);
   }
 
+  /**
+   * 异步回源使用的线程池，被缓存方法可能阻塞，不能放在Lettuce的I/O线程上执行
+   *
+   * @return {@link Executor}
+   */
+  public static Executor asyncExecutor() {
+    return asyncPool;
+  }
+
+  /**
+   * 在异步回源线程池中执行，线程池满时返回异常完成的future，不直接抛出 {@link RejectedExecutionException}
+   *
+   * @param supplier 任务
+   * @param <T> 结果类型
+   * @return 任务结果
+   */
+  public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+    try {
+      return CompletableFuture.supplyAsync(supplier, asyncPool);
+    } catch (RejectedExecutionException e) {
+      CompletableFuture<T> future = new CompletableFuture<>();
+      future.completeExceptionally(e);
+      return future;
+    }
+  }
+
   public static void close() {
     pool.shutdown();
+    asyncPool.shutdown();
   }
 }
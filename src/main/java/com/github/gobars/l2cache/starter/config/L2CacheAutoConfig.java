@@ -35,6 +35,15 @@ public class L2CacheAutoConfig {
     L2Manager l2Manager = new L2Manager(l2CacheRedisClient);
     // 默认开启统计功能
     l2Manager.setStats(l2CacheProperties.isStats());
+    l2Manager.setInvalidationMode(l2CacheProperties.getInvalidationMode());
+    l2Manager.setStreamMaxLen(l2CacheProperties.getStreamMaxLen());
+    l2Manager.setSnapshotDir(l2CacheProperties.getSnapshotDir());
+    l2Manager.setBinaryMessage(l2CacheProperties.isBinaryMessage());
+    l2Manager.setCacheChannel(l2CacheProperties.isCacheChannel());
+    l2Manager.setListenerThreads(l2CacheProperties.getListenerThreads());
+    l2Manager.setListenerQueueCapacity(l2CacheProperties.getListenerQueueCapacity());
+    l2Manager.setEvictBatchWindowMs(l2CacheProperties.getEvictBatchWindowMs());
+    l2Manager.setEvictBatchMaxKeys(l2CacheProperties.getEvictBatchMaxKeys());
     return l2Manager;
   }
 
@@ -54,6 +63,11 @@ public class L2CacheAutoConfig {
             ? null
             : l2CacheRedisProperties.getPassword());
     redisProperties.setPort(l2CacheRedisProperties.getPort());
+    redisProperties.setConnections(l2CacheRedisProperties.getConnections());
+    redisProperties.setIoThreads(l2CacheRedisProperties.getIoThreads());
+    redisProperties.setComputationThreads(l2CacheRedisProperties.getComputationThreads());
+    redisProperties.setBatchWindowMicros(l2CacheRedisProperties.getBatchWindowMicros());
+    redisProperties.setBatchMaxCommands(l2CacheRedisProperties.getBatchMaxCommands());
 
     RedisClient redisClient = new RedisClientSingle(redisProperties);
     if (!StringUtils.isBlank(redisProperties.getCluster())) {
@@ -61,7 +75,8 @@ public class L2CacheAutoConfig {
     }
 
     redisClient.setKeySerializer(new StringRedisSerializer());
-    redisClient.setValueSerializer(new JsonRedisSerializer());
+    redisClient.setValueSerializer(
+        new JsonRedisSerializer(Boolean.TRUE.equals(l2CacheRedisProperties.getCompactNullValue())));
     return redisClient;
   }
 }
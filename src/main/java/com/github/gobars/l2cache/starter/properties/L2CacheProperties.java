@@ -1,5 +1,6 @@
 package com.github.gobars.l2cache.starter.properties;
 
+import com.github.gobars.l2cache.core.listener.InvalidationMode;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /** @author yuhao.wang3 */
@@ -12,6 +13,33 @@ public class L2CacheProperties {
   /** 命名空间，必须唯一般使用服务名 */
   private String namespace;
 
+  /** L1删除消息的合并时间窗口(毫秒)，小于等于0时每次删除立即发布 */
+  private long evictBatchWindowMs = 10;
+
+  /** 一条L1删除消息最多包含的key个数 */
+  private int evictBatchMaxKeys = 500;
+
+  /** 是否发布二进制pub/sub消息，默认关闭兼容只认识JSON消息的老版本，所有节点都升级后再打开 */
+  private boolean binaryMessage = false;
+
+  /** 是否发布到缓存专用的频道，默认关闭兼容只订阅公共频道的老版本，所有节点都升级后再打开 */
+  private boolean cacheChannel = false;
+
+  /** 处理删除消息的线程数 */
+  private int listenerThreads = 4;
+
+  /** 每个处理删除消息的线程的队列长度，队列满时丢弃消息并清空对应缓存的L1 */
+  private int listenerQueueCapacity = 10000;
+
+  /** L1快照目录，配置后停机时保存L1热点数据，启动时在后台恢复 */
+  private String snapshotDir;
+
+  /** L1失效通知的方式，TRACKING需要redis 6及以上版本的单机模式，STREAM需要redis 5及以上版本 */
+  private InvalidationMode invalidationMode = InvalidationMode.PUBSUB;
+
+  /** STREAM模式下删除消息stream的最大长度 */
+  private long streamMaxLen = 100000;
+
   public boolean isStats() {
     return stats;
   }
@@ -27,4 +55,76 @@ public class L2CacheProperties {
   public void setNamespace(String namespace) {
     this.namespace = namespace;
   }
+
+  public long getEvictBatchWindowMs() {
+    return evictBatchWindowMs;
+  }
+
+  public void setEvictBatchWindowMs(long evictBatchWindowMs) {
+    this.evictBatchWindowMs = evictBatchWindowMs;
+  }
+
+  public int getEvictBatchMaxKeys() {
+    return evictBatchMaxKeys;
+  }
+
+  public void setEvictBatchMaxKeys(int evictBatchMaxKeys) {
+    this.evictBatchMaxKeys = evictBatchMaxKeys;
+  }
+
+  public boolean isBinaryMessage() {
+    return binaryMessage;
+  }
+
+  public void setBinaryMessage(boolean binaryMessage) {
+    this.binaryMessage = binaryMessage;
+  }
+
+  public boolean isCacheChannel() {
+    return cacheChannel;
+  }
+
+  public void setCacheChannel(boolean cacheChannel) {
+    this.cacheChannel = cacheChannel;
+  }
+
+  public int getListenerThreads() {
+    return listenerThreads;
+  }
+
+  public void setListenerThreads(int listenerThreads) {
+    this.listenerThreads = listenerThreads;
+  }
+
+  public int getListenerQueueCapacity() {
+    return listenerQueueCapacity;
+  }
+
+  public void setListenerQueueCapacity(int listenerQueueCapacity) {
+    this.listenerQueueCapacity = listenerQueueCapacity;
+  }
+
+  public String getSnapshotDir() {
+    return snapshotDir;
+  }
+
+  public void setSnapshotDir(String snapshotDir) {
+    this.snapshotDir = snapshotDir;
+  }
+
+  public long getStreamMaxLen() {
+    return streamMaxLen;
+  }
+
+  public void setStreamMaxLen(long streamMaxLen) {
+    this.streamMaxLen = streamMaxLen;
+  }
+
+  public InvalidationMode getInvalidationMode() {
+    return invalidationMode;
+  }
+
+  public void setInvalidationMode(InvalidationMode invalidationMode) {
+    this.invalidationMode = invalidationMode;
+  }
 }
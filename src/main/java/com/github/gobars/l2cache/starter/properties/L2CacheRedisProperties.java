@@ -12,6 +12,18 @@ public class L2CacheRedisProperties {
   String host = "localhost";
   Integer port = 6379;
   String password = null;
+  /** 数据连接数，每条连接都是多路复用的，按线程选择连接 */
+  Integer connections = 1;
+  /** Lettuce的I/O线程数，为0时使用默认值(CPU核数) */
+  Integer ioThreads = 0;
+  /** Lettuce的计算线程数，为0时使用默认值(CPU核数) */
+  Integer computationThreads = 0;
+  /** set、expire、delete合并发送的时间窗口(微秒)，为0时不合并 */
+  Long batchWindowMicros = 0L;
+  /** 合并发送时一批最多的命令数 */
+  Integer batchMaxCommands = 128;
+  /** NULL值是否写成一字节标记，老版本无法解析，默认写JSON，所有节点都升级后再打开 */
+  Boolean compactNullValue = false;
 
   public String getPassword() {
     return StringUtils.isBlank(password) ? null : password;
@@ -1,17 +1,34 @@
 package com.github.gobars.l2cache.core.test;
 
+import com.github.gobars.l2cache.core.bloom.BloomFilter;
 import com.github.gobars.l2cache.core.cache.Cache;
+import com.github.gobars.l2cache.core.cache.CaffeineCache;
 import com.github.gobars.l2cache.core.cache.L2Cache;
+import com.github.gobars.l2cache.core.cache.OffHeapCache;
 import com.github.gobars.l2cache.core.cache.RedisCache;
 import com.github.gobars.l2cache.core.cache.RedisCacheKey;
 import com.github.gobars.l2cache.core.config.CacheConfig;
+import com.github.gobars.l2cache.core.listener.RedisBatchPublisher;
+import com.github.gobars.l2cache.core.listener.RedisPubSubCodec;
+import com.github.gobars.l2cache.core.listener.RedisPubSubMessage;
+import com.github.gobars.l2cache.core.listener.RedisPubSubMessageType;
+import com.github.gobars.l2cache.core.listener.RedisPublisher;
 import com.github.gobars.l2cache.core.manager.CacheManager;
+import com.github.gobars.l2cache.core.redis.client.CommandBatchStats;
 import com.github.gobars.l2cache.core.redis.client.RedisClient;
+import com.github.gobars.l2cache.core.redis.client.RedisClientSingle;
+import com.github.gobars.l2cache.core.redis.client.RedisProperties;
+import com.github.gobars.l2cache.core.redis.client.StreamEntry;
+import com.github.gobars.l2cache.core.setting.BloomSetting;
 import com.github.gobars.l2cache.core.setting.C1Setting;
 import com.github.gobars.l2cache.core.setting.C2Setting;
 import com.github.gobars.l2cache.core.setting.L2Setting;
+import com.github.gobars.l2cache.core.setting.RefreshPolicy;
+import com.github.gobars.l2cache.core.snapshot.L1Snapshot;
 import com.github.gobars.l2cache.core.stats.CacheStats;
+import com.github.gobars.l2cache.core.support.NullValue;
 import com.github.gobars.l2cache.core.support.RedisLock;
+import com.github.gobars.l2cache.core.support.StripedExecutor;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Assert;
 import org.junit.Before;
@@ -21,7 +38,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
-import java.util.Collection;
+import java.lang.reflect.Proxy;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongFunction;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = {CacheConfig.class})
@@ -325,6 +356,403 @@ public class CacheCoreTest {
     Assert.assertEquals(str1, "test1");
   }
 
+  @Test
+  public void testGetAsync() throws Exception {
+    String cacheName = "cache:name";
+    String cacheKey1 = "cache:key:async";
+    L2Cache cache = (L2Cache) cacheManager.getCache(cacheName, l2Setting1);
+    cache.evict(cacheKey1);
+    Thread.sleep(500);
+
+    String str1 = cache.getAsync(cacheKey1, () -> initCache(String.class)).get();
+    Assert.assertEquals(str1, initCache(String.class));
+    // L1已经回填
+    Assert.assertEquals(str1, cache.getCache1().get(cacheKey1, String.class));
+
+    String str2 = cache.getCache2().<String>getAsync(cacheKey1, this::initNullCache).get();
+    Assert.assertEquals(str1, str2);
+  }
+
+  @Test
+  public void testGetAll() throws Exception {
+    String cacheName = "cache:name";
+    L2Cache cache = (L2Cache) cacheManager.getCache(cacheName, l2Setting1);
+    cache.evict("cache:key:all1");
+    cache.evict("cache:key:all2");
+    cache.evict("cache:key:all3");
+    Thread.sleep(500);
+
+    cache.put("cache:key:all1", "v1");
+    AtomicReference<Set<String>> loadedKeys = new AtomicReference<>();
+    Map<String, String> values =
+        cache.getAll(
+            Arrays.asList("cache:key:all1", "cache:key:all2", "cache:key:all3"),
+            misses -> {
+              loadedKeys.set(new HashSet<>(misses));
+              return Collections.singletonMap("cache:key:all2", "v2");
+            });
+
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList("cache:key:all2", "cache:key:all3")), loadedKeys.get());
+    Assert.assertEquals(2, values.size());
+    Assert.assertEquals("v1", values.get("cache:key:all1"));
+    Assert.assertEquals("v2", values.get("cache:key:all2"));
+    // 批量加载的结果已经写到L2，NULL值也缓存了
+    Assert.assertEquals("v2", cache.getCache2().get("cache:key:all2", String.class));
+    Assert.assertTrue(
+        redisClient.hasKey(
+            ((RedisCache) cache.getCache2()).getRedisCacheKey("cache:key:all3").getKey()));
+  }
+
+  @Test
+  public void testSingleFlight() throws Exception {
+    String cacheName = "cache:name";
+    String cacheKey1 = "cache:key:single:flight";
+    L2Cache cache = (L2Cache) cacheManager.getCache(cacheName, l2Setting1);
+    cache.evict(cacheKey1);
+    Thread.sleep(500);
+
+    AtomicInteger loads = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<String>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(
+          pool.submit(
+              () ->
+                  cache.getCache2()
+                      .get(
+                          cacheKey1,
+                          () -> {
+                            loads.incrementAndGet();
+                            Thread.sleep(200);
+                            return initCache(String.class);
+                          })));
+    }
+    for (Future<String> f : futures) {
+      Assert.assertEquals(initCache(String.class), f.get());
+    }
+    pool.shutdown();
+    Assert.assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testBloomFilter() {
+    L2Setting setting = new L2Setting(new C1Setting(10, 1000, 5), new C2Setting(10, 4, true), "");
+    setting.setBloomSetting(new BloomSetting(1000, 0.01, 30));
+    BloomFilter filter = new BloomFilter(redisClient, "cache:bloom", setting.getBloomSetting());
+    filter.rebuild(Arrays.asList("k1", "k2", "k3"));
+
+    Assert.assertTrue(filter.mightContain("k1"));
+    Assert.assertTrue(filter.mightContain("k3"));
+    Assert.assertFalse(filter.mightContain("k-not-exists"));
+
+    filter.put("k4");
+    Assert.assertTrue(filter.mightContain("k4"));
+
+    // 另一个节点从redis加载到相同的位
+    BloomFilter other = new BloomFilter(redisClient, "cache:bloom", setting.getBloomSetting());
+    other.refresh();
+    Assert.assertTrue(other.mightContain("k4"));
+    Assert.assertFalse(other.mightContain("k-not-exists"));
+    Assert.assertTrue(other.expectedFpp() < 0.01);
+  }
+
+  @Test
+  public void testOffHeapCache() {
+    C1Setting c1Setting = new C1Setting(10, 1000, 5);
+    c1Setting.setOffHeap(true);
+    c1Setting.setMaxBytes(2 * 1024 * 1024);
+    OffHeapCache cache =
+        new OffHeapCache("cache:offheap", c1Setting, true, redisClient.getValueSerializer());
+
+    Assert.assertEquals("test", cache.get("k1", () -> initCache(String.class)));
+    Assert.assertEquals("test", cache.get("k1", String.class));
+    Assert.assertNull(cache.get("k2", this::initNullCache));
+    Assert.assertTrue(cache.get("k2") instanceof NullValue);
+
+    // 写满所有slab后最早写入的key被淘汰
+    char[] big = new char[512 * 1024];
+    Arrays.fill(big, 'x');
+    for (int i = 0; i < 8; i++) {
+      cache.put("big" + i, new String(big));
+    }
+    Assert.assertNull(cache.get("k1"));
+    Assert.assertNotNull(cache.get("big7"));
+
+    cache.evict("big7");
+    Assert.assertNull(cache.get("big7"));
+  }
+
+  @Test
+  public void testL1Snapshot() throws Exception {
+    C1Setting c1Setting = new C1Setting(10, 1000, 60);
+    CaffeineCache l1 = new CaffeineCache("cache:snapshot", c1Setting, true);
+    l1.put("k1", "v1");
+    l1.put("k2", "v2");
+
+    Path dir = Files.createTempDirectory("l1snap");
+    List<L1Snapshot.Entry> entries = l1.snapshot(redisClient.getValueSerializer());
+    new L1Snapshot("cache:snapshot", "{}", System.currentTimeMillis(), entries)
+        .write(dir, "60-0-0");
+
+    L1Snapshot snapshot;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+      snapshot = L1Snapshot.read(files.iterator().next());
+    }
+    Assert.assertEquals("cache:snapshot", snapshot.getCacheName());
+    Assert.assertEquals(2, snapshot.getEntries().size());
+
+    CaffeineCache restored = new CaffeineCache("cache:snapshot", c1Setting, true);
+    Assert.assertEquals(
+        2, restored.restore(snapshot.getEntries(), redisClient.getValueSerializer()));
+    Assert.assertEquals("v1", restored.get("k1"));
+    Assert.assertEquals("v2", restored.get("k2"));
+  }
+
+  @Test
+  public void testPubSubCodec() {
+    RedisPubSubMessage message = new RedisPubSubMessage();
+    message.setCacheName("cache:codec");
+    message.setKeys(Arrays.asList("k1", "键2"));
+    message.setMessageType(RedisPubSubMessageType.EVICT);
+    message.setSource(RedisPubSubMessage.SOURCE);
+    message.setOrigin(RedisPublisher.NODE_ID);
+
+    long id = RedisPubSubCodec.cacheNameId("cache:codec");
+    LongFunction<String> names = nameId -> nameId == id ? "cache:codec" : null;
+    byte[] binary = RedisPubSubCodec.encode(message);
+    Assert.assertEquals(message, RedisPubSubCodec.decode(binary, names));
+    // 老版本节点发布的JSON消息
+    byte[] json = RedisPubSubCodec.encodeJson(message);
+    Assert.assertEquals(message, RedisPubSubCodec.decode(json, names));
+    Assert.assertTrue(binary.length < json.length);
+    // JSON消息和二进制消息分到同一个线程
+    Assert.assertEquals(Long.toString(id), RedisPubSubCodec.stripeKey(json));
+    Assert.assertEquals(RedisPubSubCodec.stripeKey(binary), RedisPubSubCodec.stripeKey(json));
+    // 本地没有的缓存
+    Assert.assertNull(RedisPubSubCodec.decode(binary, nameId -> null));
+  }
+
+  @Test
+  public void testStream() {
+    String stream = "test:l2cache-stream";
+    redisClient.delete(stream);
+    Assert.assertNull(redisClient.lastStreamId(stream));
+
+    String id1 = redisClient.xadd(stream, new byte[] {1}, 100);
+    String id2 = redisClient.xadd(stream, new byte[] {2}, 100);
+    Assert.assertEquals(id1, redisClient.firstStreamId(stream));
+    Assert.assertEquals(id2, redisClient.lastStreamId(stream));
+
+    // 从id1之后补读
+    List<StreamEntry> entries = redisClient.xread(stream, id1, 10, 100);
+    Assert.assertEquals(1, entries.size());
+    Assert.assertEquals(id2, entries.get(0).getId());
+    Assert.assertArrayEquals(new byte[] {2}, entries.get(0).getMessage());
+    Assert.assertTrue(redisClient.xread(stream, id2, 10, 100).isEmpty());
+    redisClient.delete(stream);
+  }
+
+  @Test
+  public void testRemoveCache() {
+    String cacheName = "cache:remove";
+    Cache cache = cacheManager.getCache(cacheName, l2Setting1);
+    cache.put("key", "value");
+    Assert.assertTrue(cacheManager.getCacheNames().contains(cacheName));
+
+    cacheManager.removeCache(cacheName);
+    Assert.assertFalse(cacheManager.getCacheNames().contains(cacheName));
+    Assert.assertTrue(cacheManager.getCache(cacheName).isEmpty());
+    // 重新创建后L2的数据还在
+    Assert.assertEquals("value", cacheManager.getCache(cacheName, l2Setting1).get("key"));
+  }
+
+  @Test
+  public void testEvictDuringL1Fill() {
+    L2Cache cache = (L2Cache) cacheManager.getCache("cache:fill-race", l2Setting1);
+    cache.evict("key");
+    // 查询L2期间收到删除消息，回填的旧值不能留在L1
+    Object value =
+        cache.get(
+            "key",
+            () -> {
+              cache.evictL1("key");
+              return "old";
+            });
+    Assert.assertEquals("old", value);
+    Assert.assertNull(cache.getCache1().get("key"));
+  }
+
+  @Test
+  public void testL1TtlCappedByL2() throws Exception {
+    // 按key设置的有效时间比L1的有效时间短
+    CaffeineCache caffeine = new CaffeineCache("cache:ttl", new C1Setting(10, 1000, 5), false);
+    caffeine.putIfAbsent("short", "v1", 200);
+    caffeine.putIfAbsent("long", "v2", 0);
+    Assert.assertEquals("v1", caffeine.get("short"));
+    Thread.sleep(400);
+    Assert.assertNull(caffeine.get("short"));
+    Assert.assertEquals("v2", caffeine.get("long"));
+
+    // 批量查询回填L1时，有效时间不超过L2的剩余生存时间
+    L2Cache cache = (L2Cache) cacheManager.getCache("cache:ttl-fill", l2Setting1);
+    cache.evict("key");
+    String redisKey = ((RedisCache) cache.getCache2()).getRedisCacheKey("key").getKey();
+    redisClient.set(redisKey, "v", 1, TimeUnit.SECONDS);
+    Map<String, String> values =
+        cache.getAll(Collections.singletonList("key"), misses -> Collections.emptyMap());
+    Assert.assertEquals("v", values.get("key"));
+    Assert.assertEquals("v", cache.getCache1().get("key"));
+    Thread.sleep(1300);
+    Assert.assertNull(cache.getCache1().get("key"));
+  }
+
+  @Test
+  public void testRefreshPolicy() {
+    // 固定刷新窗口：剩余生存时间进入窗口才刷新，和随机数无关
+    Assert.assertFalse(RefreshPolicy.PRELOAD_WINDOW.shouldRefresh(0, 2000, 100, 1, 0.5));
+    Assert.assertTrue(RefreshPolicy.PRELOAD_WINDOW.shouldRefresh(1000, 2000, 100, 1, 0.5));
+    Assert.assertTrue(RefreshPolicy.PRELOAD_WINDOW.shouldRefresh(2000, 2000, 100, 1, 1));
+    Assert.assertFalse(RefreshPolicy.PRELOAD_WINDOW.shouldRefresh(3000, 2000, 100, 1, 1e-9));
+
+    // XFetch：-loadCost * beta * ln(rand) >= ttl 时刷新
+    RefreshPolicy xfetch = RefreshPolicy.XFETCH;
+    Assert.assertFalse(xfetch.shouldRefresh(0, 2000, 100, 1, 1e-9));
+    Assert.assertFalse(xfetch.shouldRefresh(1, 2000, 100, 1, 1));
+    Assert.assertTrue(xfetch.shouldRefresh(100, 2000, 100, 1, Math.exp(-2)));
+    Assert.assertFalse(xfetch.shouldRefresh(100, 2000, 100, 1, Math.exp(-0.5)));
+    // beta越大越早刷新
+    Assert.assertTrue(xfetch.shouldRefresh(90, 2000, 100, 2, Math.exp(-0.5)));
+    // 离过期很远时只有极小的随机数才刷新
+    Assert.assertFalse(xfetch.shouldRefresh(60000, 2000, 100, 1, 0.01));
+    Assert.assertTrue(xfetch.shouldRefresh(60000, 2000, 100, 1, Math.exp(-601)));
+    // 没有回源耗时记录时退化为固定刷新窗口
+    Assert.assertTrue(xfetch.shouldRefresh(1000, 2000, 0, 1, 1));
+    Assert.assertFalse(xfetch.shouldRefresh(3000, 2000, 0, 1, 1e-9));
+  }
+
+  @Test
+  public void testBatchPublisher() throws Exception {
+    List<RedisPubSubMessage> published = new CopyOnWriteArrayList<>();
+    RedisClient recorder = recordingRedisClient(published, "c1", "c2");
+
+    // 窗口结束时把窗口内的key合并成一条消息
+    RedisBatchPublisher windowed = new RedisBatchPublisher(recorder, 100, 100);
+    windowed.evict("c1", "k1");
+    windowed.evict("c1", "k2");
+    Assert.assertTrue(published.isEmpty());
+    Thread.sleep(500);
+    Assert.assertEquals(1, published.size());
+    Assert.assertEquals(Arrays.asList("k1", "k2"), published.get(0).allKeys());
+    windowed.shutdown();
+
+    // 攒够maxKeys个key立即发布，不等窗口结束
+    published.clear();
+    RedisBatchPublisher full = new RedisBatchPublisher(recorder, 60000, 3);
+    full.evictAll("c1", Arrays.asList("a", "b", "c", "d"));
+    Assert.assertEquals(1, published.size());
+    Assert.assertEquals(Arrays.asList("a", "b", "c"), published.get(0).allKeys());
+
+    // 关闭时发布所有缓冲的key，之后的key不再缓冲
+    full.evict("c2", "x");
+    full.shutdown();
+    Assert.assertEquals(3, published.size());
+    Set<String> flushed = new HashSet<>();
+    published.subList(1, 3).forEach(m -> flushed.add(m.getCacheName() + m.allKeys()));
+    Assert.assertEquals(new HashSet<>(Arrays.asList("c1[d]", "c2[x]")), flushed);
+    full.evict("c2", "y");
+    Assert.assertEquals(4, published.size());
+    Assert.assertEquals(Collections.singletonList("y"), published.get(3).allKeys());
+  }
+
+  @Test
+  public void testStripedExecutor() throws Exception {
+    Set<String> overflowKeys = Collections.synchronizedSet(new HashSet<>());
+    StripedExecutor executor = new StripedExecutor("test-striped", 1, 1, overflowKeys::add);
+    CountDownLatch blocked = new CountDownLatch(1);
+    List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    // 第一个任务占住线程，第二个排队，第三个队列已满被丢弃
+    Assert.assertTrue(executor.execute("a", () -> await(blocked)));
+    Thread.sleep(50);
+    Assert.assertTrue(executor.execute("a", () -> order.add(1)));
+    Assert.assertFalse(executor.execute("a", () -> order.add(2)));
+    Assert.assertEquals(1, executor.getRejectedCount());
+
+    blocked.countDown();
+    Thread.sleep(300);
+    Assert.assertEquals(Collections.singletonList(1), order);
+    Assert.assertEquals(Collections.singleton("a"), overflowKeys);
+    executor.shutdown();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  public void testCommandBatcher() throws Exception {
+    RedisProperties properties = new RedisProperties();
+    properties.setBatchWindowMicros(1000L);
+    properties.setBatchMaxCommands(16);
+    RedisClient batchClient = new RedisClientSingle(properties);
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      String key = "test:batch:" + i;
+      futures.add(pool.submit(() -> batchClient.set(key, key, 60, TimeUnit.SECONDS)));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    pool.shutdown();
+
+    Assert.assertEquals("test:batch:7", batchClient.get("test:batch:7"));
+    CommandBatchStats stats = batchClient.getCommandBatchStats();
+    Assert.assertEquals(200, stats.getCommands());
+    Assert.assertTrue(stats.getMaxBatchSize() <= 16);
+    for (int i = 0; i < 200; i++) {
+      batchClient.delete("test:batch:" + i);
+    }
+  }
+
+  @Test
+  public void testClearAsync() throws Exception {
+    RedisCache cache = new RedisCache("cache:clear", redisClient, 60, 0, false, true, false);
+    Map<String, Object> values = new HashMap<>();
+    for (int i = 0; i < 2500; i++) {
+      values.put("key" + i, i);
+    }
+    cache.putAll(values);
+
+    AtomicLong lastProgress = new AtomicLong();
+    long deleted = cache.clearAsync(lastProgress::set).get();
+    Assert.assertEquals(2500, deleted);
+    Assert.assertEquals(2500, lastProgress.get());
+    Assert.assertNull(cache.get("key1"));
+  }
+
+  @Test
+  public void testGenerationClear() {
+    C2Setting c2Setting = new C2Setting(60, 0, false);
+    c2Setting.setGenerationClear(true);
+    RedisCache cache = new RedisCache("cache:generation", redisClient, c2Setting, false);
+    cache.put("key1", "value1");
+    long generation = cache.getGeneration();
+    String oldKey = cache.getRedisCacheKey("key1").getKey();
+
+    cache.clear();
+    Assert.assertEquals(generation + 1, cache.getGeneration());
+    Assert.assertNull(cache.get("key1"));
+    // 老代数的key不删除，等过期
+    Assert.assertTrue(redisClient.hasKey(oldKey));
+    Assert.assertNotEquals(oldKey, cache.getRedisCacheKey("key1").getKey());
+  }
+
   /** 测试统计 */
   @Test
   public void testStats() {
@@ -368,6 +796,26 @@ public class CacheCoreTest {
     lock.unlock();
   }
 
+  /** 只记录发布的消息的RedisClient，PUBLISH和XADD都解码后放到published */
+  private static RedisClient recordingRedisClient(
+      List<RedisPubSubMessage> published, String... cacheNames) {
+    Map<Long, String> names = new HashMap<>();
+    for (String name : cacheNames) {
+      names.put(RedisPubSubCodec.cacheNameId(name), name);
+    }
+    return (RedisClient)
+        Proxy.newProxyInstance(
+            RedisClient.class.getClassLoader(),
+            new Class<?>[] {RedisClient.class},
+            (proxy, method, args) -> {
+              boolean send = "publish".equals(method.getName()) || "xadd".equals(method.getName());
+              if (send && args[1] instanceof byte[]) {
+                published.add(RedisPubSubCodec.decode((byte[]) args[1], names::get));
+              }
+              return null;
+            });
+  }
+
   private <T> T initCache(Class<T> t) {
     log.debug("加载缓存");
     return (T) "test";